@@ -62,6 +62,18 @@ public class IndexLinkEnricher implements HalEnricher {
         .parameters()
         .href();
       appender.appendLink("traceMonitorKinds", traceMonitorKindsUrl);
+
+      String traceMonitorLiveUrl = new LinkBuilder(pathInfoStore.get().get(), TraceMonitorResource.class)
+        .method("live")
+        .parameters()
+        .href();
+      appender.appendLink("traceMonitorLive", traceMonitorLiveUrl);
+
+      String traceMonitorCountUrl = new LinkBuilder(pathInfoStore.get().get(), TraceMonitorResource.class)
+        .method("count")
+        .parameters()
+        .href();
+      appender.appendLink("traceMonitorCount", traceMonitorCountUrl);
     }
   }
 }
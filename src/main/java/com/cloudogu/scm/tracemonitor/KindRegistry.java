@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the stored kinds with the number of their entries, the number of their failed entries and the instant
+ * their newest span has been closed.
+ * It is seeded once from the storage engine and kept up to date by writes and retention afterwards, so that kinds can
+ * be listed without scanning the store.
+ * <p>
+ * Updates of a kind have to be guarded by the write lock of the kind, reads are safe at any time.
+ */
+class KindRegistry {
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  void seed(String kind, long count, long failedCount, Instant lastSeen) {
+    Entry entry = new Entry();
+    entry.count = count;
+    entry.failedCount = failedCount;
+    entry.lastSeen = lastSeen;
+    entries.put(kind, entry);
+  }
+
+  /**
+   * Records a write of the kind with the number of new entries and new failed entries (coalesced spans update existing
+   * entries) and the closed instant of the newest written span.
+   */
+  void recordWrite(String kind, long newEntries, long newFailedEntries, Instant closed) {
+    Entry entry = entries.computeIfAbsent(kind, k -> new Entry());
+    entry.count += newEntries;
+    entry.failedCount += newFailedEntries;
+    if (entry.lastSeen == null || closed.isAfter(entry.lastSeen)) {
+      entry.lastSeen = closed;
+    }
+  }
+
+  /**
+   * Records the number of entries and failed entries, which are left after old entries of the kind have been removed.
+   */
+  void recordRetention(String kind, long count, long failedCount) {
+    Entry entry = entries.get(kind);
+    if (entry != null) {
+      entry.count = count;
+      entry.failedCount = failedCount;
+    }
+  }
+
+  boolean contains(String kind) {
+    return entries.containsKey(kind);
+  }
+
+  /**
+   * Returns the number of entries of the given kinds, either of all entries or of the failed ones only.
+   */
+  long count(Collection<String> kinds, boolean onlyFailed) {
+    long sum = 0;
+    for (String kind : kinds) {
+      Entry entry = entries.get(kind);
+      if (entry != null) {
+        sum += onlyFailed ? entry.failedCount : entry.count;
+      }
+    }
+    return sum;
+  }
+
+  Set<String> getKinds() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  List<KindSummary> getSummaries() {
+    return entries.entrySet()
+      .stream()
+      .map(entry -> new KindSummary(entry.getKey(), entry.getValue().count, entry.getValue().failedCount, entry.getValue().lastSeen))
+      .sorted(Comparator.comparing(KindSummary::getKind))
+      .toList();
+  }
+
+  private static class Entry {
+    private volatile long count;
+    private volatile long failedCount;
+    private volatile Instant lastSeen;
+  }
+
+  /**
+   * Number of stored entries and failed entries of a kind and the instant its newest span has been closed, or
+   * {@code null} if unknown.
+   */
+  @Value
+  public static class KindSummary {
+    String kind;
+    long count;
+    long failedCount;
+    Instant lastSeen;
+  }
+}
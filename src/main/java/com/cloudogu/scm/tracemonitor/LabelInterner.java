@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import sonia.scm.trace.SpanContext;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded dictionary for label keys and values. Spans of the same kind mostly share their label keys and many of
+ * their values, so replacing equal strings with a single shared instance keeps the heap usage of spans held in
+ * memory low. The least recently used strings are evicted, once the maximum size is reached.
+ */
+class LabelInterner {
+
+  private static final int STRING_HEADER_BYTES = 24;
+  private static final int ARRAY_HEADER_BYTES = 16;
+
+  private final ConcurrentMap<String, String> dictionary;
+  private final TraceMonitorStatistics statistics;
+
+  LabelInterner(int maximumSize, TraceMonitorStatistics statistics) {
+    Cache<String, String> cache = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .build();
+    this.dictionary = cache.asMap();
+    this.statistics = statistics;
+  }
+
+  /**
+   * Returns a span context with the same values, whose label keys and values are interned.
+   */
+  SpanContext intern(SpanContext spanContext) {
+    return new SpanContext(
+      spanContext.getKind(),
+      intern(spanContext.getLabels()),
+      spanContext.getOpened(),
+      spanContext.getClosed(),
+      spanContext.isFailed()
+    );
+  }
+
+  /**
+   * Labels with {@code null} keys or values, which callers may pass, are kept as they are in a map which allows them.
+   */
+  private Map<String, String> intern(Map<String, String> labels) {
+    if (labels.entrySet().stream().anyMatch(label -> label.getKey() == null || label.getValue() == null)) {
+      Map<String, String> interned = new LinkedHashMap<>(labels.size() * 2);
+      labels.forEach((key, value) -> interned.put(intern(key), intern(value)));
+      return Collections.unmodifiableMap(interned);
+    }
+    ImmutableMap.Builder<String, String> interned = ImmutableMap.builderWithExpectedSize(labels.size());
+    labels.forEach((key, value) -> interned.put(intern(key), intern(value)));
+    return interned.build();
+  }
+
+  String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    String existing = dictionary.putIfAbsent(value, value);
+    if (existing == null) {
+      statistics.recordLabelInternMiss();
+      return value;
+    }
+    if (existing != value) {
+      statistics.recordLabelInternHit(estimateSize(value));
+    }
+    return existing;
+  }
+
+  /**
+   * Estimates the heap size of a string with compact strings on a 64 bit jvm with compressed oops.
+   */
+  private static long estimateSize(String value) {
+    return STRING_HEADER_BYTES + align(ARRAY_HEADER_BYTES + (long) value.length());
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inverted index from the trigrams of label values to the ids of the spans, which contain them. It narrows down the
+ * spans which have to be checked for a label filter. Candidates may still not contain the filter as a whole, so they
+ * have to be checked with {@link SpanQuery#matches(StoredSpan)}, but spans which are not a candidate never match.
+ * <p>
+ * Updates have to be serialized by the caller, lookups may run concurrently.
+ */
+class LabelTrigramIndex {
+
+  private static final int GRAM_LENGTH = 3;
+
+  private final ConcurrentMap<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+  void add(String id, Collection<String> values) {
+    for (String trigram : trigrams(values)) {
+      postings.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+  }
+
+  void remove(String id, Collection<String> values) {
+    removeStale(id, values, List.of());
+  }
+
+  /**
+   * Removes the id for trigrams, which are only contained in the former values of the span.
+   */
+  void removeStale(String id, Collection<String> formerValues, Collection<String> currentValues) {
+    Set<String> trigrams = trigrams(formerValues);
+    trigrams.removeAll(trigrams(currentValues));
+    for (String trigram : trigrams) {
+      postings.computeIfPresent(trigram, (t, ids) -> {
+        ids.remove(id);
+        return ids.isEmpty() ? null : ids;
+      });
+    }
+  }
+
+  void clear() {
+    postings.clear();
+  }
+
+  /**
+   * Returns the ids of the spans, which may contain the filter in one of their label values, or an empty optional if
+   * the filter is too short to be looked up in the index.
+   */
+  Optional<Set<String>> candidates(String filter) {
+    if (filter.length() < GRAM_LENGTH) {
+      return Optional.empty();
+    }
+    List<Set<String>> postingLists = new ArrayList<>();
+    for (String trigram : trigrams(List.of(filter))) {
+      Set<String> ids = postings.get(trigram);
+      if (ids == null) {
+        return Optional.of(Set.of());
+      }
+      postingLists.add(ids);
+    }
+    postingLists.sort(Comparator.comparingInt(Set::size));
+    Set<String> candidates = new HashSet<>(postingLists.get(0));
+    for (int i = 1; i < postingLists.size() && !candidates.isEmpty(); i++) {
+      candidates.retainAll(postingLists.get(i));
+    }
+    return Optional.of(candidates);
+  }
+
+  private static Set<String> trigrams(Collection<String> values) {
+    Set<String> trigrams = new HashSet<>();
+    for (String value : values) {
+      if (value == null) {
+        continue;
+      }
+      for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+        trigrams.add(value.substring(i, i + GRAM_LENGTH));
+      }
+    }
+    return trigrams;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a single quantile of a stream of values with constant memory, using the P-square algorithm of Jain and
+ * Chlamtac. The estimator keeps five markers, whose heights are adjusted with every new value; no value is stored.
+ */
+final class LatencyQuantileEstimator {
+
+  private static final int MARKERS = 5;
+
+  private final double quantile;
+  private final double[] heights = new double[MARKERS];
+  private final int[] positions = new int[MARKERS];
+  private final double[] desiredPositions = new double[MARKERS];
+  private final double[] increments;
+  private long count;
+
+  LatencyQuantileEstimator(double quantile) {
+    if (quantile <= 0.0 || quantile >= 1.0) {
+      throw new IllegalArgumentException("quantile must be between 0 and 1, but was " + quantile);
+    }
+    this.quantile = quantile;
+    this.increments = new double[]{0.0, quantile / 2, quantile, (1 + quantile) / 2, 1.0};
+  }
+
+  double getQuantile() {
+    return quantile;
+  }
+
+  synchronized long getCount() {
+    return count;
+  }
+
+  synchronized void add(double value) {
+    if (count < MARKERS) {
+      heights[(int) count++] = value;
+      if (count == MARKERS) {
+        initializeMarkers();
+      }
+      return;
+    }
+    int cell = findCell(value);
+    for (int i = cell + 1; i < MARKERS; i++) {
+      positions[i]++;
+    }
+    for (int i = 0; i < MARKERS; i++) {
+      desiredPositions[i] += increments[i];
+    }
+    for (int i = 1; i < MARKERS - 1; i++) {
+      adjustMarker(i);
+    }
+    count++;
+  }
+
+  /**
+   * Returns the current estimate of the quantile or {@link Double#NaN}, if no value has been added.
+   */
+  synchronized double estimate() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (count < MARKERS) {
+      double[] values = Arrays.copyOf(heights, (int) count);
+      Arrays.sort(values);
+      return values[(int) Math.min(count - 1, Math.round(quantile * (count - 1)))];
+    }
+    return heights[2];
+  }
+
+  private void initializeMarkers() {
+    Arrays.sort(heights);
+    for (int i = 0; i < MARKERS; i++) {
+      positions[i] = i + 1;
+    }
+    desiredPositions[0] = 1;
+    desiredPositions[1] = 1 + 2 * quantile;
+    desiredPositions[2] = 1 + 4 * quantile;
+    desiredPositions[3] = 3 + 2 * quantile;
+    desiredPositions[4] = 5;
+  }
+
+  private int findCell(double value) {
+    if (value < heights[0]) {
+      heights[0] = value;
+      return 0;
+    }
+    if (value >= heights[MARKERS - 1]) {
+      heights[MARKERS - 1] = value;
+      return MARKERS - 2;
+    }
+    int cell = 0;
+    while (value >= heights[cell + 1]) {
+      cell++;
+    }
+    return cell;
+  }
+
+  private void adjustMarker(int i) {
+    double delta = desiredPositions[i] - positions[i];
+    if ((delta >= 1 && positions[i + 1] - positions[i] > 1) || (delta <= -1 && positions[i - 1] - positions[i] < -1)) {
+      int direction = delta > 0 ? 1 : -1;
+      double height = parabolic(i, direction);
+      if (heights[i - 1] < height && height < heights[i + 1]) {
+        heights[i] = height;
+      } else {
+        heights[i] = linear(i, direction);
+      }
+      positions[i] += direction;
+    }
+  }
+
+  private double parabolic(int i, int direction) {
+    return heights[i] + (double) direction / (positions[i + 1] - positions[i - 1])
+      * ((positions[i] - positions[i - 1] + direction) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+      + (positions[i + 1] - positions[i] - direction) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+  }
+
+  private double linear(int i, int direction) {
+    return heights[i] + direction * (heights[i + direction] - heights[i]) / (positions[i + direction] - positions[i]);
+  }
+}
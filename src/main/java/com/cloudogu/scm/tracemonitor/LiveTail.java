@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.plugin.Extension;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes newly stored spans with their ids to subscribed clients as server-sent events. Every subscriber has a
+ * bounded buffer. If a client does not keep up, the oldest buffered spans are dropped, so that neither the ingestion
+ * nor other subscribers are slowed down. Buffers are drained by a small pool of sender threads, which never wait for
+ * a send to complete. Heartbeats detect closed connections and close subscriptions, whose send has not completed
+ * since the former heartbeat.
+ */
+@Slf4j
+@Extension
+@Singleton
+public class LiveTail implements ServletContextListener {
+
+  static final String SPAN_EVENT = "span";
+
+  private static final int BUFFER_CAPACITY = 100;
+  private static final int SENDER_THREADS = 2;
+  private static final long HEARTBEAT_SECONDS = 30;
+  private static final long SEND_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(HEARTBEAT_SECONDS);
+
+  private final ScheduledExecutorService executor;
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  LiveTail() {
+    this(Executors.newScheduledThreadPool(
+      SENDER_THREADS,
+      new ThreadFactoryBuilder().setNameFormat("TraceMonitorLiveTail-%d").setDaemon(true).build()
+    ));
+    executor.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @VisibleForTesting
+  LiveTail(ScheduledExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Registers a client, which receives all spans published from now on, that match the kind, failed and label
+   * conditions of the query.
+   */
+  void subscribe(SpanQuery query, SseEventSink sink, Sse sse) {
+    log.debug("subscribing to live tail of spans for {}", query);
+    subscribers.add(new Subscriber(query, sink, sse));
+  }
+
+  /**
+   * Passes the span, which has just been stored, to the buffers of all matching subscribers without blocking. Without
+   * subscribers, this is a no-op.
+   */
+  void publish(StoredSpan span) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(span);
+    }
+  }
+
+  @VisibleForTesting
+  int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  @VisibleForTesting
+  void heartbeat() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.heartbeat();
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    executor.shutdownNow();
+    subscribers.forEach(Subscriber::close);
+  }
+
+  private class Subscriber {
+
+    private final SpanQuery query;
+    private final SseEventSink sink;
+    private final Sse sse;
+    private final BlockingDeque<StoredSpan> buffer = new LinkedBlockingDeque<>(BUFFER_CAPACITY);
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean heartbeatPending;
+    private volatile long sendingSince;
+
+    Subscriber(SpanQuery query, SseEventSink sink, Sse sse) {
+      this.query = query;
+      this.sink = sink;
+      this.sse = sse;
+    }
+
+    void offer(StoredSpan span) {
+      if (!query.matches(span.getSpanContext())) {
+        return;
+      }
+      while (!buffer.offerLast(span)) {
+        buffer.pollFirst();
+      }
+      scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+      if (draining.compareAndSet(false, true)) {
+        scheduleSend();
+      }
+    }
+
+    private void scheduleSend() {
+      try {
+        executor.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        close();
+      }
+    }
+
+    void heartbeat() {
+      long since = sendingSince;
+      if (since != 0 && System.nanoTime() - since > SEND_TIMEOUT_NANOS) {
+        log.debug("live tail subscriber did not receive an event in time, closing subscription");
+        close();
+        return;
+      }
+      heartbeatPending = true;
+      if (draining.compareAndSet(false, true)) {
+        drain();
+      }
+    }
+
+    /**
+     * Sends buffered events as long as sends complete immediately. Only a single send is in flight per subscriber, so
+     * that events are never interleaved. If a send is pending, draining continues with its completion on a sender
+     * thread, so that sender threads never wait for slow clients.
+     */
+    private void drain() {
+      do {
+        OutboundSseEvent event;
+        while ((event = nextEvent()) != null) {
+          CompletableFuture<?> sent = send(event);
+          if (!sent.isDone()) {
+            sent.whenComplete((result, failure) -> {
+              if (completed(failure)) {
+                scheduleSend();
+              }
+            });
+            return;
+          }
+          if (!completed(sent.handle((result, failure) -> failure).join())) {
+            return;
+          }
+        }
+        draining.set(false);
+      } while ((heartbeatPending || !buffer.isEmpty()) && draining.compareAndSet(false, true));
+    }
+
+    private OutboundSseEvent nextEvent() {
+      if (heartbeatPending) {
+        heartbeatPending = false;
+        return sse.newEventBuilder().comment("heartbeat").build();
+      }
+      StoredSpan span = buffer.pollFirst();
+      if (span == null) {
+        return null;
+      }
+      return sse.newEventBuilder()
+        .name(SPAN_EVENT)
+        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+        .data(StoredSpan.class, span)
+        .build();
+    }
+
+    private CompletableFuture<?> send(OutboundSseEvent event) {
+      if (sink.isClosed()) {
+        return CompletableFuture.failedFuture(new IllegalStateException("live tail subscription has been closed"));
+      }
+      sendingSince = System.nanoTime();
+      try {
+        return sink.send(event).toCompletableFuture();
+      } catch (Exception e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+
+    private boolean completed(Throwable failure) {
+      sendingSince = 0;
+      if (failure != null) {
+        log.debug("failed to send event to live tail subscriber, closing subscription", failure);
+        close();
+        return false;
+      }
+      return true;
+    }
+
+    void close() {
+      subscribers.remove(this);
+      buffer.clear();
+      try {
+        sink.close();
+      } catch (Exception e) {
+        log.debug("failed to close live tail subscription", e);
+      }
+    }
+  }
+}
@@ -27,6 +27,5 @@ public class MapperModule extends AbstractModule {
   @Override
   protected void configure() {
     bind(ConfigurationMapper.class).to(Mappers.getMapperClass(ConfigurationMapper.class));
-    bind(SpanContextMapper.class).to(Mappers.getMapperClass(SpanContextMapper.class));
   }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache for the results of span queries. Results are stamped with the write generation of the kind of the
+ * query, or with the global generation for queries over all kinds. Writes and cleanups increment the generations
+ * after the spans have been changed, so that results read before are never served afterwards. Outdated results are
+ * not removed explicitly, they are evicted as the least recently used ones.
+ */
+class QueryResultCache {
+
+  private final Cache<Key, Object> results;
+  private final ConcurrentMap<String, AtomicLong> kindGenerations = new ConcurrentHashMap<>();
+  private final AtomicLong globalGeneration = new AtomicLong();
+  private final TraceMonitorStatistics statistics;
+
+  QueryResultCache(int maximumSize, TraceMonitorStatistics statistics) {
+    this.results = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    this.statistics = statistics;
+  }
+
+  /**
+   * Returns the cached result of the operation or loads and caches it.
+   *
+   * @param parameters all further values the result depends on, like the requested page
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(String operation, SpanQuery query, List<?> parameters, Supplier<T> loader) {
+    Key key = new Key(operation, query, parameters, generation(query));
+    Object result = results.getIfPresent(key);
+    if (result != null) {
+      statistics.recordResultCacheHit();
+      return (T) result;
+    }
+    statistics.recordResultCacheMiss();
+    T loaded = loader.get();
+    results.put(key, loaded);
+    return loaded;
+  }
+
+  /**
+   * Marks the results for the kind and for all kinds as outdated. Has to be called after the spans have been changed,
+   * so that generations are only kept for kinds, which have been registered by a write or cleanup.
+   */
+  void invalidate(String kind) {
+    kindGenerations.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+    globalGeneration.incrementAndGet();
+  }
+
+  void invalidateAll() {
+    kindGenerations.values().forEach(AtomicLong::incrementAndGet);
+    globalGeneration.incrementAndGet();
+    results.invalidateAll();
+  }
+
+  /**
+   * Returns the write generation, which the results of the query depend on. Kinds of queries are not validated, so
+   * that reading the generation of a kind, which has never been changed, must not keep an entry for it.
+   */
+  long generation(SpanQuery query) {
+    if (!query.hasKind()) {
+      return globalGeneration.get();
+    }
+    AtomicLong generation = kindGenerations.get(query.getKind());
+    return generation == null ? 0 : generation.get();
+  }
+
+  @VisibleForTesting
+  int getKindCount() {
+    return kindGenerations.size();
+  }
+
+  private record Key(String operation, SpanQuery query, List<?> parameters, long generation) {
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import sonia.scm.store.Conditions;
+import sonia.scm.store.QueryableMutableStore;
+import sonia.scm.store.QueryableStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Default storage engine, which keeps the spans in the queryable store of scm-manager.
+ */
+@Singleton
+class QueryableSpanStorage implements SpanStorage {
+
+  private static final int CHUNK_SIZE = 1_000;
+
+  private final SpanContextStoreWrapperStoreFactory storeFactory;
+
+  @Inject
+  QueryableSpanStorage(SpanContextStoreWrapperStoreFactory storeFactory) {
+    this.storeFactory = storeFactory;
+  }
+
+  @Override
+  public Collection<String> getKinds() {
+    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.getOverall()) {
+      return store
+        .query()
+        .project(SpanContextStoreWrapperQueryFields.SPANCONTEXTKIND_ID)
+        .distinct()
+        .findAll()
+        .stream()
+        .map(row -> row[0].toString())
+        .toList();
+    }
+  }
+
+  @Override
+  public <T> List<T> findNewest(String kind, int limit, BiFunction<String, SpanContextStoreWrapper, T> mapper) {
+    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.get(kind)) {
+      return store
+        .query()
+        .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.DESC)
+        .withIds()
+        .findAll(0, limit)
+        .stream()
+        .map(result -> mapper.apply(result.getId(), result.getEntity()))
+        .toList();
+    }
+  }
+
+  @Override
+  public Optional<StoredSpan> get(String kind, String id, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+    try (QueryableMutableStore<SpanContextStoreWrapper> store = storeFactory.getMutable(kind)) {
+      return Optional.ofNullable(store.get(id))
+        .map(wrapper -> mapper.apply(id, wrapper));
+    }
+  }
+
+  /**
+   * The store matches label filters with {@code LIKE}, which ignores the case, treats {@code %} and {@code _} as
+   * wildcards and matches across the joined label values. So spans matching a label filter are candidates only, which
+   * are matched with the query again. Candidates are read in chunks, until the requested page is complete.
+   * <p>
+   * Entries beyond the window are the oldest entries written since the last retention, which are excluded as well.
+   */
+  @Override
+  public List<StoredSpan> find(String kind, SpanQuery query, int window, int offset, int limit, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.get(kind)) {
+      Map<String, SpanContextStoreWrapper> excluded = beyondWindow(store, window);
+      var spans = store.query(conditions(query));
+      if (query.getOrder() == SpanQuery.Order.SLOWEST_FIRST) {
+        spans = spans.orderBy(SpanContextStoreWrapperQueryFields.DURATIONMILLIS, QueryableStore.Order.DESC);
+      }
+      var ordered = spans
+        .orderBy(SpanContextStoreWrapperQueryFields.CLOSED, QueryableStore.Order.DESC)
+        .withIds();
+      if (!query.hasLabelFilter() && excluded.isEmpty()) {
+        return ordered
+          .findAll(offset, limit)
+          .stream()
+          .map(result -> mapper.apply(result.getId(), result.getEntity()))
+          .toList();
+      }
+      int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+      List<StoredSpan> matches = new ArrayList<>(Math.min(end, CHUNK_SIZE));
+      for (int chunkOffset = 0; matches.size() < end; chunkOffset += CHUNK_SIZE) {
+        var chunk = ordered.findAll(chunkOffset, CHUNK_SIZE);
+        for (var result : chunk) {
+          if (matches.size() == end) {
+            break;
+          }
+          if (!excluded.containsKey(result.getId())) {
+            StoredSpan span = mapper.apply(result.getId(), result.getEntity());
+            if (query.matches(span)) {
+              matches.add(span);
+            }
+          }
+        }
+        if (chunk.size() < CHUNK_SIZE) {
+          break;
+        }
+      }
+      return List.copyOf(matches.subList(Math.min(offset, matches.size()), matches.size()));
+    }
+  }
+
+  /**
+   * Spans beyond the window are already read to exclude them, so that they are subtracted unless a label filter
+   * requires the candidates to be read anyway.
+   */
+  @Override
+  public long count(String kind, SpanQuery query, int window) {
+    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.get(kind)) {
+      Map<String, SpanContextStoreWrapper> excluded = beyondWindow(store, window);
+      if (!query.hasLabelFilter()) {
+        long excludedMatches = excluded.entrySet()
+          .stream()
+          .filter(entry -> query.matches(new StoredSpan(entry.getKey(), kind, entry.getValue())))
+          .count();
+        return store.query(conditions(query)).count() - excludedMatches;
+      }
+      var candidates = store.query(conditions(query))
+        .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.DESC)
+        .withIds();
+      long count = 0;
+      for (int chunkOffset = 0; ; chunkOffset += CHUNK_SIZE) {
+        var chunk = candidates.findAll(chunkOffset, CHUNK_SIZE);
+        for (var result : chunk) {
+          if (!excluded.containsKey(result.getId()) && query.matches(new StoredSpan(result.getId(), kind, result.getEntity()))) {
+            count++;
+          }
+        }
+        if (chunk.size() < CHUNK_SIZE) {
+          return count;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the oldest entries of the kind, which are beyond the newest entries up to the window.
+   */
+  private Map<String, SpanContextStoreWrapper> beyondWindow(QueryableStore<SpanContextStoreWrapper> store, int window) {
+    long size = store.query().count();
+    if (size <= window) {
+      return Map.of();
+    }
+    Map<String, SpanContextStoreWrapper> beyondWindow = new HashMap<>();
+    store.query()
+      .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.ASC)
+      .withIds()
+      .findAll(0, Math.toIntExact(size - window))
+      .forEach(result -> beyondWindow.put(result.getId(), result.getEntity()));
+    return beyondWindow;
+  }
+
+  @SuppressWarnings("unchecked")
+  private QueryableStore.Condition<SpanContextStoreWrapper>[] conditions(SpanQuery query) {
+    List<QueryableStore.Condition<SpanContextStoreWrapper>> conditions = new ArrayList<>();
+    if (query.isOnlyFailed()) {
+      conditions.add(SpanContextStoreWrapperQueryFields.FAILED.isTrue());
+    }
+    if (query.hasLabelFilter()) {
+      conditions.add(SpanContextStoreWrapperQueryFields.LABELVALUES.contains(query.getLabelFilter()));
+    }
+    if (query.getFrom() != null) {
+      conditions.add(Conditions.not(SpanContextStoreWrapperQueryFields.CLOSED.isBefore(query.getFrom())));
+    }
+    if (query.getTo() != null) {
+      conditions.add(SpanContextStoreWrapperQueryFields.CLOSED.isBefore(query.getTo()));
+    }
+    if (query.getMinDurationMillis() != null) {
+      conditions.add(SpanContextStoreWrapperQueryFields.DURATIONMILLIS.greaterOrEquals(query.getMinDurationMillis()));
+    }
+    if (query.getMaxDurationMillis() != null) {
+      conditions.add(SpanContextStoreWrapperQueryFields.DURATIONMILLIS.lessOrEquals(query.getMaxDurationMillis()));
+    }
+    return conditions.toArray(new QueryableStore.Condition[0]);
+  }
+
+  @Override
+  public void write(String kind, Consumer<Writer> writes) {
+    try (QueryableMutableStore<SpanContextStoreWrapper> store = storeFactory.getMutable(kind)) {
+      store.transactional(() -> {
+        writes.accept(new Writer() {
+          @Override
+          public String insert(SpanContextStoreWrapper wrapper) {
+            return store.put(wrapper);
+          }
+
+          @Override
+          public String update(String id, SpanContextStoreWrapper wrapper) {
+            store.remove(id);
+            return store.put(wrapper);
+          }
+        });
+        return true;
+      });
+    }
+  }
+
+  @Override
+  public void retain(String kind, int size) {
+    try (QueryableMutableStore<SpanContextStoreWrapper> store = storeFactory.getMutable(kind)) {
+      store.query()
+        .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.DESC)
+        .retain(size);
+    }
+  }
+}
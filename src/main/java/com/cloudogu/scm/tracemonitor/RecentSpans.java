@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * In-memory copy of the newest stored spans of a single kind, the most recently written first. Spans are neither
+ * written nor read from the store in the order they have been closed, so readers must not rely on this order. Reads
+ * are served from an immutable snapshot and never block; updates have to be guarded by the write lock of the kind.
+ * <p>
+ * The label values of the spans are indexed by their trigrams. New spans are indexed before the snapshot is replaced
+ * and removed spans afterwards, so that the index covers at least the spans of any snapshot a reader may see.
+ */
+class RecentSpans {
+
+  private final int capacity;
+  private final LabelTrigramIndex labelIndex = new LabelTrigramIndex();
+  private volatile List<StoredSpan> spans = List.of();
+
+  RecentSpans(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Replaces the content with spans read from the store, which have to be ordered newest first.
+   */
+  void load(Collection<StoredSpan> newestFirst) {
+    List<StoredSpan> loaded = newestFirst.stream().limit(capacity).toList();
+    labelIndex.clear();
+    loaded.forEach(span -> labelIndex.add(span.getId(), span.getLabels().values()));
+    spans = loaded;
+  }
+
+  /**
+   * Adds spans which have just been written, oldest first. Spans with an id which is already known replace the
+   * former entry and move to the front, as it is the case for coalesced spans.
+   */
+  void addAll(List<StoredSpan> written) {
+    addAll(written, id -> false);
+  }
+
+  /**
+   * Adds spans which have just been written, oldest first, and drops spans with ids that have been replaced, because
+   * their entries have been stored with a new id.
+   */
+  void addAll(List<StoredSpan> written, Predicate<String> replaced) {
+    List<StoredSpan> updated = new ArrayList<>(capacity);
+    Map<String, StoredSpan> added = new HashMap<>();
+    for (int i = written.size() - 1; i >= 0 && updated.size() < capacity; i--) {
+      StoredSpan span = written.get(i);
+      if (!replaced.test(span.getId()) && added.putIfAbsent(span.getId(), span) == null) {
+        updated.add(span);
+        labelIndex.add(span.getId(), span.getLabels().values());
+      }
+    }
+    List<StoredSpan> former = spans;
+    Set<String> kept = new HashSet<>();
+    for (StoredSpan span : former) {
+      if (updated.size() >= capacity) {
+        break;
+      }
+      if (!added.containsKey(span.getId()) && !replaced.test(span.getId())) {
+        updated.add(span);
+        kept.add(span.getId());
+      }
+    }
+    spans = List.copyOf(updated);
+    for (StoredSpan span : former) {
+      StoredSpan replacement = added.get(span.getId());
+      if (replacement != null) {
+        labelIndex.removeStale(span.getId(), span.getLabels().values(), replacement.getLabels().values());
+      } else if (!kept.contains(span.getId())) {
+        labelIndex.remove(span.getId(), span.getLabels().values());
+      }
+    }
+  }
+
+  List<StoredSpan> getNewest(int limit) {
+    List<StoredSpan> current = spans;
+    return current.size() <= limit ? current : current.subList(0, limit);
+  }
+
+  /**
+   * Returns the ids of the spans, which may contain the filter in one of their label values, or an empty optional if
+   * the filter cannot be looked up in the index. The snapshot has to be read before the candidates.
+   */
+  Optional<Set<String>> getLabelCandidates(String labelFilter) {
+    return labelIndex.candidates(labelFilter);
+  }
+}
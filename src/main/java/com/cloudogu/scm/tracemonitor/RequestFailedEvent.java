@@ -26,4 +26,8 @@ import sonia.scm.trace.SpanContext;
 @AllArgsConstructor
 public class RequestFailedEvent {
   private final SpanContext context;
+  /**
+   * Id of the stored span, unique for the kind of the span, or {@code null} if the span could not be stored.
+   */
+  private final String id;
 }
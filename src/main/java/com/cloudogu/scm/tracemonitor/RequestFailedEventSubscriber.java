@@ -25,7 +25,6 @@ import sonia.scm.event.Event;
 import sonia.scm.event.ScmEventBus;
 import sonia.scm.plugin.Extension;
 import sonia.scm.plugin.Requires;
-import sonia.scm.trace.SpanContext;
 
 import jakarta.inject.Inject;
 import jakarta.xml.bind.annotation.XmlAccessType;
@@ -46,9 +45,13 @@ public class RequestFailedEventSubscriber {
 
   @Subscribe
   public void onEvent(RequestFailedEvent event) {
-    eventBus.post(new RequestFailedMyEvent(event.getContext()));
+    eventBus.post(new RequestFailedMyEvent(event.getContext().getKind(), event.getId()));
   }
 
+  /**
+   * Only references the span by its kind and id, so that the span is neither stored twice nor shipped with every
+   * landing page. The id is {@code null}, if the span could not be stored.
+   */
   @Event
   @XmlAccessorType(XmlAccessType.FIELD)
   @XmlRootElement
@@ -56,11 +59,13 @@ public class RequestFailedEventSubscriber {
   @Getter
   public static class RequestFailedMyEvent extends MyEvent {
 
-    private SpanContext context;
+    private String kind;
+    private String id;
 
-    public RequestFailedMyEvent(SpanContext context) {
+    public RequestFailedMyEvent(String kind, String id) {
       super("RequestFailedMyEvent", "traceMonitor:read");
-      this.context = context;
+      this.kind = kind;
+      this.id = id;
     }
   }
 }
@@ -0,0 +1,616 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.SCMContextProvider;
+import sonia.scm.plugin.Extension;
+import sonia.scm.trace.SpanContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Storage engine, which appends spans to fixed size memory mapped segment files, one directory per kind.
+ * <p>
+ * Each record consists of its length, the id of the entry and the encoded entry. Updates of an entry append a new
+ * record with the same id, readers scan the segments from the newest to the oldest record and skip older versions.
+ * Retention deletes whole segments, as soon as the newer segments hold enough entries. Record headers are read
+ * directly from the mapped segments, only the entries which are returned are copied to the heap.
+ * <p>
+ * For label filters and time ranges, each kind keeps a trigram index of the label values and an index of the closed
+ * timestamps together with the position of the newest record of each entry. The indexes are built with the first
+ * filtered query for the kind and are maintained by writes and retention afterwards, so that only the records of
+ * candidates have to be decoded.
+ * <p>
+ * Segment files are named by a sequence number, which is derived from the newest segment on startup, so that their
+ * names keep the order of the segments even if updates append records of older entries.
+ * <p>
+ * Records are written to the mapped memory, which is flushed to the file when a segment is full and on shutdown.
+ * Records of the active segment which are not yet flushed may be lost, if the operating system crashes. A batch of
+ * records is written completely or not at all.
+ * <p>
+ * Before retention deletes segments, it stores the sequence number of the oldest retained segment. Segments below
+ * this boundary are skipped and deleted on startup, because segment files which are still mapped cannot be deleted
+ * on every platform.
+ */
+@Slf4j
+@Extension
+@Singleton
+class SegmentLogSpanStorage implements SpanStorage, ServletContextListener {
+
+  static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  private static final String SEGMENT_SUFFIX = ".segment";
+  private static final String RETENTION_FILE = "retained-from";
+  private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final byte ENTRY_VERSION = 1;
+  private static final int ENTRY_FIXED_SIZE = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES + 3 * Long.BYTES;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final ConcurrentMap<String, KindLog> logs = new ConcurrentHashMap<>();
+
+  @Inject
+  SegmentLogSpanStorage(SCMContextProvider context) {
+    this(context.getBaseDirectory().toPath().resolve("trace-monitor").resolve("segments"), SEGMENT_SIZE);
+  }
+
+  @VisibleForTesting
+  SegmentLogSpanStorage(Path directory, int segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+  }
+
+  @Override
+  public Collection<String> getKinds() {
+    if (!Files.isDirectory(directory)) {
+      return List.of();
+    }
+    try (Stream<Path> kindDirectories = Files.list(directory)) {
+      return kindDirectories
+        .filter(Files::isDirectory)
+        .map(kindDirectory -> decodeKind(kindDirectory.getFileName().toString()))
+        .toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to list kinds of segment log", e);
+    }
+  }
+
+  @Override
+  public <T> List<T> findNewest(String kind, int limit, BiFunction<String, SpanContextStoreWrapper, T> mapper) {
+    return log(kind).findNewest(limit, mapper);
+  }
+
+  @Override
+  public Optional<StoredSpan> get(String kind, String id, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+    return log(kind).get(id, mapper);
+  }
+
+  /**
+   * Only label filters and time ranges are indexed, so the matching entries of the kind are read completely. Only the
+   * entries up to the requested page are ordered.
+   */
+  @Override
+  public List<StoredSpan> find(String kind, SpanQuery query, int window, int offset, int limit, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+    List<StoredSpan> matches = log(kind).find(query, window, mapper);
+    return TopK.select(matches.stream(), query.getOrder().comparator(), (int) Math.min((long) offset + limit, Integer.MAX_VALUE))
+      .stream()
+      .skip(offset)
+      .toList();
+  }
+
+  @Override
+  public long count(String kind, SpanQuery query, int window) {
+    return log(kind).find(query, window, (id, wrapper) -> new StoredSpan(id, kind, wrapper)).size();
+  }
+
+  @Override
+  public void write(String kind, Consumer<Writer> writes) {
+    log(kind).write(writes);
+  }
+
+  @Override
+  public void retain(String kind, int size) {
+    log(kind).retain(size);
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    logs.values().forEach(KindLog::flush);
+  }
+
+  private KindLog log(String kind) {
+    return logs.computeIfAbsent(kind, k -> new KindLog(k, directory.resolve(encodeKind(k))));
+  }
+
+  private static String encodeKind(String kind) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(kind.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeKind(String directoryName) {
+    return new String(Base64.getUrlDecoder().decode(directoryName), StandardCharsets.UTF_8);
+  }
+
+  private static long sequence(Path segmentFile) {
+    String name = segmentFile.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static byte[] encodeEntry(SpanContextStoreWrapper wrapper) {
+    byte[] spanContext = wrapper.getEncodedSpanContext();
+    ByteBuffer entry = ByteBuffer.allocate(ENTRY_FIXED_SIZE + spanContext.length);
+    entry.put(ENTRY_VERSION);
+    entry.putInt(wrapper.getCount());
+    entry.putLong(wrapper.getFirstClosed().getEpochSecond());
+    entry.putInt(wrapper.getFirstClosed().getNano());
+    entry.putLong(wrapper.getMinDurationMillis());
+    entry.putLong(wrapper.getMaxDurationMillis());
+    entry.putLong(wrapper.getTotalDurationMillis());
+    entry.put(spanContext);
+    return entry.array();
+  }
+
+  private static SpanContextStoreWrapper decodeEntry(ByteBuffer segment, int offset, int length) {
+    byte version = segment.get(offset);
+    if (version != ENTRY_VERSION) {
+      throw new IllegalStateException("unsupported segment entry version " + version);
+    }
+    SpanContextStoreWrapper wrapper = new SpanContextStoreWrapper();
+    wrapper.setCount(segment.getInt(offset + 1));
+    wrapper.setFirstClosed(Instant.ofEpochSecond(segment.getLong(offset + 5), segment.getInt(offset + 13)));
+    wrapper.setMinDurationMillis(segment.getLong(offset + 17));
+    wrapper.setMaxDurationMillis(segment.getLong(offset + 25));
+    wrapper.setTotalDurationMillis(segment.getLong(offset + 33));
+    byte[] spanContext = new byte[length - ENTRY_FIXED_SIZE];
+    segment.get(offset + ENTRY_FIXED_SIZE, spanContext);
+    wrapper.setEncodedSpanContext(spanContext);
+    return wrapper;
+  }
+
+  private record Record(long id, byte[] data) {
+  }
+
+  private record Location(Segment segment, int offset) {
+
+    SpanContextStoreWrapper decode() {
+      return decodeEntry(segment.buffer, offset + RECORD_HEADER_SIZE, segment.buffer.getInt(offset));
+    }
+  }
+
+  private static class Segment {
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private int end;
+
+    Segment(Path file, MappedByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    /**
+     * Scans the record headers and returns the offsets of all records, oldest first.
+     */
+    int[] scan() {
+      int[] offsets = new int[16];
+      int count = 0;
+      int position = 0;
+      while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+        int length = buffer.getInt(position);
+        if (length <= 0) {
+          break;
+        }
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = position;
+        position += RECORD_HEADER_SIZE + length;
+      }
+      end = position;
+      return Arrays.copyOf(offsets, count);
+    }
+
+    long id(int offset) {
+      return buffer.getLong(offset + Integer.BYTES);
+    }
+
+    void flush() {
+      buffer.force();
+    }
+
+    /**
+     * Discards all records from the given offset on, a zero length marks the end of the records.
+     */
+    void truncate(int offset) {
+      if (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+        buffer.putInt(offset, 0);
+      }
+      end = offset;
+    }
+
+    boolean fits(Record entry) {
+      return end + RECORD_HEADER_SIZE + entry.data.length <= buffer.capacity();
+    }
+
+    int append(Record entry) {
+      int offset = end;
+      buffer.putLong(offset + Integer.BYTES, entry.id);
+      buffer.put(offset + RECORD_HEADER_SIZE, entry.data);
+      // the length is written last, it marks the record as complete
+      buffer.putInt(offset, entry.data.length);
+      end += RECORD_HEADER_SIZE + entry.data.length;
+      return offset;
+    }
+  }
+
+  private class KindLog {
+
+    private final String kind;
+    private final Path kindDirectory;
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextId = 1;
+    private long nextSegment = 1;
+    private LabelTrigramIndex labelIndex;
+    private NavigableMap<Instant, Set<String>> closedIndex;
+    private Map<String, Location> newestLocations;
+
+    KindLog(String kind, Path kindDirectory) {
+      this.kind = kind;
+      this.kindDirectory = kindDirectory;
+      open();
+    }
+
+    private void open() {
+      if (!Files.isDirectory(kindDirectory)) {
+        return;
+      }
+      try (Stream<Path> files = Files.list(kindDirectory)) {
+        List<Path> segmentFiles = files
+          .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted(Comparator.comparingLong(SegmentLogSpanStorage::sequence))
+          .toList();
+        long retainedFrom = readRetainedFrom();
+        for (Path segmentFile : segmentFiles) {
+          nextSegment = Math.max(nextSegment, sequence(segmentFile) + 1);
+          if (sequence(segmentFile) < retainedFrom) {
+            delete(segmentFile);
+            continue;
+          }
+          Segment segment = new Segment(segmentFile, map(segmentFile, false));
+          for (int offset : segment.scan()) {
+            nextId = Math.max(nextId, segment.id(offset) + 1);
+          }
+          segments.add(segment);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("failed to open segment log " + kindDirectory, e);
+      }
+    }
+
+    synchronized <T> List<T> findNewest(int limit, BiFunction<String, SpanContextStoreWrapper, T> mapper) {
+      List<T> result = new ArrayList<>(Math.min(limit, 1_000));
+      Set<Long> seen = new HashSet<>();
+      for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+        Segment segment = segments.get(i);
+        int[] offsets = segment.scan();
+        for (int j = offsets.length - 1; j >= 0 && result.size() < limit; j--) {
+          long id = segment.id(offsets[j]);
+          if (seen.add(id)) {
+            result.add(mapper.apply(String.valueOf(id), new Location(segment, offsets[j]).decode()));
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Looks up the newest location of the id, which is part of the indexes.
+     */
+    synchronized Optional<StoredSpan> get(String id, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+      buildIndexes();
+      Location location = newestLocations.get(id);
+      if (location == null) {
+        return Optional.empty();
+      }
+      return Optional.of(mapper.apply(id, location.decode()));
+    }
+
+    synchronized List<StoredSpan> find(SpanQuery query, int window, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper) {
+      Optional<Set<String>> candidates = candidates(query);
+      if (candidates.isEmpty()) {
+        return findNewest(window, mapper).stream().filter(query::matches).toList();
+      }
+      Set<String> newest = newestLocations.size() > window ? findNewestIds(window) : newestLocations.keySet();
+      List<StoredSpan> result = new ArrayList<>();
+      for (String id : candidates.get()) {
+        if (!newest.contains(id)) {
+          continue;
+        }
+        StoredSpan span = mapper.apply(id, newestLocations.get(id).decode());
+        if (query.matches(span)) {
+          result.add(span);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Reads the ids of the newest entries from the record headers only, without decoding the entries.
+     */
+    private Set<String> findNewestIds(int limit) {
+      Set<String> ids = new HashSet<>();
+      for (int i = segments.size() - 1; i >= 0 && ids.size() < limit; i--) {
+        Segment segment = segments.get(i);
+        int[] offsets = segment.scan();
+        for (int j = offsets.length - 1; j >= 0 && ids.size() < limit; j--) {
+          ids.add(String.valueOf(segment.id(offsets[j])));
+        }
+      }
+      return ids;
+    }
+
+    private Optional<Set<String>> candidates(SpanQuery query) {
+      if (!query.hasLabelFilter() && !query.hasTimeRange()) {
+        return Optional.empty();
+      }
+      buildIndexes();
+      Optional<Set<String>> labelCandidates = query.hasLabelFilter()
+        ? labelIndex.candidates(query.getLabelFilter())
+        : Optional.empty();
+      if (!query.hasTimeRange()) {
+        return labelCandidates;
+      }
+      NavigableMap<Instant, Set<String>> range = closedIndex;
+      if (query.getFrom() != null) {
+        range = range.tailMap(query.getFrom(), true);
+      }
+      if (query.getTo() != null) {
+        range = range.headMap(query.getTo(), false);
+      }
+      Set<String> candidates = new HashSet<>();
+      range.values().forEach(candidates::addAll);
+      labelCandidates.ifPresent(candidates::retainAll);
+      return Optional.of(candidates);
+    }
+
+    private void buildIndexes() {
+      if (labelIndex == null) {
+        log.debug("building indexes for segment log of kind '{}'", kind);
+        labelIndex = new LabelTrigramIndex();
+        closedIndex = new TreeMap<>();
+        newestLocations = new HashMap<>();
+        for (Segment segment : segments) {
+          for (int offset : segment.scan()) {
+            index(segment.id(offset), new Location(segment, offset));
+          }
+        }
+      }
+    }
+
+    private void index(long id, Location location) {
+      String key = String.valueOf(id);
+      SpanContext spanContext = decodeSpanContext(location);
+      Location former = newestLocations.put(key, location);
+      if (former != null) {
+        SpanContext formerSpanContext = decodeSpanContext(former);
+        labelIndex.removeStale(key, formerSpanContext.getLabels().values(), spanContext.getLabels().values());
+        removeClosed(key, formerSpanContext.getClosed());
+      }
+      labelIndex.add(key, spanContext.getLabels().values());
+      closedIndex.computeIfAbsent(spanContext.getClosed(), closed -> new HashSet<>()).add(key);
+    }
+
+    private void unindex(Segment segment) {
+      for (int offset : segment.scan()) {
+        String key = String.valueOf(segment.id(offset));
+        Location location = newestLocations.get(key);
+        if (location != null && location.segment == segment) {
+          SpanContext spanContext = decodeSpanContext(location);
+          newestLocations.remove(key);
+          labelIndex.remove(key, spanContext.getLabels().values());
+          removeClosed(key, spanContext.getClosed());
+        }
+      }
+    }
+
+    private void removeClosed(String key, Instant closed) {
+      closedIndex.computeIfPresent(closed, (c, ids) -> {
+        ids.remove(key);
+        return ids.isEmpty() ? null : ids;
+      });
+    }
+
+    private SpanContext decodeSpanContext(Location location) {
+      return location.decode().decodeSpanContext(kind);
+    }
+
+    private long readRetainedFrom() throws IOException {
+      Path retentionFile = kindDirectory.resolve(RETENTION_FILE);
+      if (!Files.exists(retentionFile)) {
+        return 0;
+      }
+      return Long.parseLong(Files.readString(retentionFile).trim());
+    }
+
+    private void writeRetainedFrom(long sequence) {
+      try {
+        Files.writeString(kindDirectory.resolve(RETENTION_FILE), String.valueOf(sequence));
+      } catch (IOException e) {
+        throw new UncheckedIOException("failed to store retention of segment log " + kindDirectory, e);
+      }
+    }
+
+    synchronized void write(Consumer<Writer> writes) {
+      List<Record> records = new ArrayList<>();
+      long[] next = {nextId};
+      writes.accept(new Writer() {
+        @Override
+        public String insert(SpanContextStoreWrapper wrapper) {
+          long id = next[0]++;
+          records.add(new Record(id, encodeEntry(wrapper)));
+          return String.valueOf(id);
+        }
+
+        @Override
+        public String update(String id, SpanContextStoreWrapper wrapper) {
+          records.add(new Record(Long.parseLong(id), encodeEntry(wrapper)));
+          return id;
+        }
+      });
+      for (Record entry : records) {
+        if (RECORD_HEADER_SIZE + entry.data.length > segmentSize) {
+          throw new IllegalArgumentException("span with id " + entry.id + " is too large for a segment");
+        }
+      }
+      // ids are not handed out again, even if the batch fails while it is appended
+      nextId = next[0];
+      int segmentCount = segments.size();
+      int end = segmentCount == 0 ? 0 : segments.get(segmentCount - 1).end;
+      List<Location> locations = new ArrayList<>(records.size());
+      try {
+        for (Record entry : records) {
+          locations.add(append(entry));
+        }
+      } catch (RuntimeException e) {
+        rollback(segmentCount, end);
+        throw e;
+      }
+      if (labelIndex != null) {
+        for (int i = 0; i < records.size(); i++) {
+          index(records.get(i).id, locations.get(i));
+        }
+      }
+    }
+
+    private void rollback(int segmentCount, int end) {
+      while (segments.size() > segmentCount) {
+        Segment segment = segments.remove(segments.size() - 1);
+        segment.truncate(0);
+        delete(segment.file);
+      }
+      if (segmentCount > 0) {
+        segments.get(segmentCount - 1).truncate(end);
+      }
+    }
+
+    synchronized void retain(int size) {
+      Set<Long> ids = new HashSet<>();
+      int keepFrom = 0;
+      for (int i = segments.size() - 1; i >= 0; i--) {
+        Segment segment = segments.get(i);
+        for (int offset : segment.scan()) {
+          ids.add(segment.id(offset));
+        }
+        if (ids.size() >= size) {
+          keepFrom = i;
+          break;
+        }
+      }
+      if (keepFrom == 0) {
+        return;
+      }
+      writeRetainedFrom(sequence(segments.get(keepFrom).file));
+      for (int i = 0; i < keepFrom; i++) {
+        // the segment is dropped before its file is deleted, so that its mapping is no longer referenced
+        Segment segment = segments.remove(0);
+        if (labelIndex != null) {
+          unindex(segment);
+        }
+        delete(segment.file);
+      }
+    }
+
+    private void delete(Path segmentFile) {
+      log.debug("deleting segment {}", segmentFile);
+      try {
+        Files.deleteIfExists(segmentFile);
+      } catch (IOException e) {
+        log.warn("failed to delete segment {}, it will be deleted on the next start", segmentFile, e);
+      }
+    }
+
+    private Location append(Record entry) {
+      Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+      if (active == null || !active.fits(entry)) {
+        if (active != null) {
+          active.flush();
+        }
+        active = createSegment();
+      }
+      return new Location(active, active.append(entry));
+    }
+
+    synchronized void flush() {
+      if (!segments.isEmpty()) {
+        segments.get(segments.size() - 1).flush();
+      }
+    }
+
+    private Segment createSegment() {
+      Path file = kindDirectory.resolve(String.format("%020d%s", nextSegment++, SEGMENT_SUFFIX));
+      log.debug("creating segment {}", file);
+      try {
+        Files.createDirectories(kindDirectory);
+        Segment segment = new Segment(file, map(file, true));
+        segments.add(segment);
+        return segment;
+      } catch (IOException e) {
+        throw new UncheckedIOException("failed to create segment " + file, e);
+      }
+    }
+
+    private MappedByteBuffer map(Path file, boolean create) throws IOException {
+      StandardOpenOption[] options = create
+        ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+        : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+      try (FileChannel channel = FileChannel.open(file, options)) {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, create ? segmentSize : channel.size());
+      }
+    }
+  }
+}
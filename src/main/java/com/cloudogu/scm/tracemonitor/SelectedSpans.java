@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Spans of a page, which are written as array with the selected fields only.
+ */
+@JsonSerialize(using = SelectedSpans.Serializer.class)
+public class SelectedSpans {
+
+  private final Collection<StoredSpan> spans;
+  private final SpanFields fields;
+
+  SelectedSpans(Collection<StoredSpan> spans, SpanFields fields) {
+    this.spans = spans;
+    this.fields = fields;
+  }
+
+  static class Serializer extends StdSerializer<SelectedSpans> {
+
+    Serializer() {
+      super(SelectedSpans.class);
+    }
+
+    @Override
+    public void serialize(SelectedSpans selected, JsonGenerator generator, SerializerProvider provider) throws IOException {
+      generator.writeStartArray();
+      for (StoredSpan span : selected.spans) {
+        generator.writeStartObject();
+        StoredSpanSerializer.writeFields(generator, span, selected.fields);
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import sonia.scm.trace.SpanContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects slow spans by estimating a percentile of the span duration per kind online. The estimate uses constant
+ * memory per kind and no history of spans. Until enough spans of a kind have been seen for a reliable estimate, all
+ * spans are treated as slow.
+ */
+@Singleton
+public class SlowSpanDetector {
+
+  private static final int MIN_SAMPLES = 100;
+
+  private final TraceMonitorStatistics statistics;
+  private final ConcurrentMap<String, LatencyQuantileEstimator> estimators = new ConcurrentHashMap<>();
+
+  @Inject
+  SlowSpanDetector(TraceMonitorStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  boolean isSlowOrFailed(SpanContext span, double percentile) {
+    LatencyQuantileEstimator estimator = estimator(span.getKind(), percentile / 100);
+    long duration = span.duration().toMillis();
+    double threshold = estimator.estimate();
+    boolean warm = estimator.getCount() >= MIN_SAMPLES;
+    estimator.add(duration);
+
+    TraceMonitorStatistics.KindStatistics kindStatistics = statistics.kind(span.getKind());
+    if (warm) {
+      kindStatistics.updateSlowThreshold(Math.round(threshold));
+    }
+    if (span.isFailed() || !warm || duration > threshold) {
+      return true;
+    }
+    kindStatistics.recordBelowThreshold();
+    return false;
+  }
+
+  private LatencyQuantileEstimator estimator(String kind, double quantile) {
+    return estimators.compute(kind, (k, estimator) -> {
+      if (estimator == null || estimator.getQuantile() != quantile) {
+        return new LatencyQuantileEstimator(quantile);
+      }
+      return estimator;
+    });
+  }
+}
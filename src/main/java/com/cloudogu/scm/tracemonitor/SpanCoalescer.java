@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Folds repeated spans of a single kind into one stored entry. Spans are repeats, if they have the same url, status
+ * and result and are closed within the coalescing window, which starts with the first occurrence. The first
+ * occurrence is stored as a new entry, later occurrences update this entry. The values of the last occurrence are only
+ * replaced by occurrences which have been closed after it.
+ * <p>
+ * Storage engines may store an updated entry with a new id, so that retention keeps it. The former ids are remembered
+ * for a while, so that links to former versions of an entry, like the ones of failure events, can be resolved.
+ * <p>
+ * Instances are not thread safe, they have to be guarded by the write lock of their kind. Only the former ids may be
+ * resolved concurrently.
+ */
+class SpanCoalescer {
+
+  private static final int MAX_OPEN_ENTRIES = 1_000;
+  private static final int MAX_FORMER_IDS = 10_000;
+
+  private final Map<Key, OpenEntry> openEntries = new HashMap<>();
+  private final Map<String, String> writtenIds = new HashMap<>();
+  private final Cache<String, String> currentIds = CacheBuilder.newBuilder().maximumSize(MAX_FORMER_IDS).build();
+
+  /**
+   * Writes the span either as a new entry or into an open entry and returns the resulting entry.
+   */
+  StoredSpan write(SpanStorage.Writer writer, SpanContext span, Duration window) {
+    Key key = Key.of(span);
+    OpenEntry openEntry = openEntries.get(key);
+    if (openEntry != null && !span.getClosed().isAfter(openEntry.windowEnd)) {
+      SpanContext last = openEntry.wrapper.merge(span) ? span : openEntry.last;
+      String id = writer.update(openEntry.id, openEntry.wrapper);
+      if (!id.equals(openEntry.id)) {
+        writtenIds.put(openEntry.id, id);
+      }
+      openEntries.put(key, new OpenEntry(id, openEntry.wrapper, openEntry.windowEnd, last));
+      return new StoredSpan(id, last, openEntry.wrapper);
+    }
+    evictClosedEntries(span.getClosed());
+    SpanContextStoreWrapper wrapper = new SpanContextStoreWrapper(span);
+    String id = writer.insert(wrapper);
+    openEntries.put(key, new OpenEntry(id, wrapper, span.getClosed().plus(window), span));
+    return new StoredSpan(id, span, wrapper);
+  }
+
+  /**
+   * Has to be called, when the writes have been stored, so that the former ids of the written entries are resolved.
+   */
+  void commit() {
+    currentIds.putAll(writtenIds);
+    writtenIds.clear();
+  }
+
+  /**
+   * Returns the id under which the entry with the given id is stored now.
+   */
+  String currentId(String id) {
+    String current = id;
+    for (String next = currentIds.getIfPresent(current); next != null; next = currentIds.getIfPresent(current)) {
+      current = next;
+    }
+    return current;
+  }
+
+  /**
+   * Returns {@code true}, if the entry with the given id has been stored with a new id.
+   */
+  boolean isReplaced(String id) {
+    return currentIds.getIfPresent(id) != null;
+  }
+
+  /**
+   * Closes all open entries and drops the ids of writes which have not been stored. The former ids of stored entries
+   * are kept, because they are still valid links to their entries.
+   */
+  void clear() {
+    openEntries.clear();
+    writtenIds.clear();
+  }
+
+  private void evictClosedEntries(Instant now) {
+    openEntries.values().removeIf(entry -> entry.windowEnd.isBefore(now));
+    if (openEntries.size() >= MAX_OPEN_ENTRIES) {
+      openEntries.clear();
+    }
+  }
+
+  private record Key(String url, String status, boolean failed) {
+    static Key of(SpanContext span) {
+      return new Key(span.getLabels().get("url"), span.getLabels().get("status"), span.isFailed());
+    }
+  }
+
+  private record OpenEntry(String id, SpanContextStoreWrapper wrapper, Instant windowEnd, SpanContext last) {
+  }
+}
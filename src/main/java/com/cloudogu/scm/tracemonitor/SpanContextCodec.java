@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import sonia.scm.trace.SpanContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a {@link SpanContext} for the store.
+ * <p>
+ * The encoding starts with a version byte. Version 1 stores the opened timestamp as zig-zag varint seconds and
+ * varint nanos, the duration as varint nanos, a flag byte and the labels. Label keys which are known to the
+ * {@link #LABEL_KEYS dictionary} are written as their index, all other keys and all values as length prefixed
+ * UTF-8. Version 2 writes the length increased by one, so that a length of zero marks a {@code null} value, which
+ * callers may pass as label value. The kind is not part of the encoding, because it is the parent id of the stored
+ * entry.
+ */
+final class SpanContextCodec {
+
+  static final byte VERSION = 2;
+
+  private static final byte VERSION_WITHOUT_NULL_VALUES = 1;
+
+  /**
+   * Label keys which are encoded as a single byte. Keys must never be removed or reordered, because their index is
+   * persisted; new keys have to be appended.
+   */
+  static final List<String> LABEL_KEYS = List.of("url", "method", "status", "exception", "message");
+
+  private static final int INLINE_KEY = 0;
+  private static final int FLAG_FAILED = 1;
+
+  private SpanContextCodec() {
+  }
+
+  static byte[] encode(SpanContext spanContext) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+    Instant opened = spanContext.getOpened();
+    output.write(VERSION);
+    writeVarLong(output, zigZag(opened.getEpochSecond()));
+    writeVarLong(output, opened.getNano());
+    writeVarLong(output, zigZag(spanContext.duration().toNanos()));
+    output.write(spanContext.isFailed() ? FLAG_FAILED : 0);
+
+    Map<String, String> labels = spanContext.getLabels();
+    writeVarLong(output, labels.size());
+    for (Map.Entry<String, String> label : labels.entrySet()) {
+      int keyIndex = label.getKey() == null ? -1 : LABEL_KEYS.indexOf(label.getKey());
+      if (keyIndex >= 0) {
+        writeVarLong(output, keyIndex + 1L);
+      } else {
+        writeVarLong(output, INLINE_KEY);
+        writeString(output, label.getKey());
+      }
+      writeString(output, label.getValue());
+    }
+    return output.toByteArray();
+  }
+
+  static SpanContext decode(String kind, byte[] encoded) {
+    ByteBuffer input = ByteBuffer.wrap(encoded);
+    byte version = input.get();
+    if (version != VERSION && version != VERSION_WITHOUT_NULL_VALUES) {
+      throw new IllegalArgumentException("unsupported span encoding version " + version);
+    }
+    Instant opened = Instant.ofEpochSecond(unZigZag(readVarLong(input)), readVarLong(input));
+    Instant closed = opened.plus(Duration.ofNanos(unZigZag(readVarLong(input))));
+    boolean failed = (input.get() & FLAG_FAILED) != 0;
+
+    int labelCount = (int) readVarLong(input);
+    Map<String, String> labels = new LinkedHashMap<>(labelCount * 2);
+    for (int i = 0; i < labelCount; i++) {
+      int keyIndex = (int) readVarLong(input);
+      String key = keyIndex == INLINE_KEY ? readString(input, version) : LABEL_KEYS.get(keyIndex - 1);
+      labels.put(key, readString(input, version));
+    }
+    return new SpanContext(kind, labels, opened, closed, failed);
+  }
+
+  private static void writeString(ByteArrayOutputStream output, String value) {
+    if (value == null) {
+      writeVarLong(output, 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(output, bytes.length + 1L);
+    output.writeBytes(bytes);
+  }
+
+  private static String readString(ByteBuffer input, byte version) {
+    int length = (int) readVarLong(input);
+    if (version != VERSION_WITHOUT_NULL_VALUES) {
+      if (length == 0) {
+        return null;
+      }
+      length--;
+    }
+    String value = new String(input.array(), input.position(), length, StandardCharsets.UTF_8);
+    input.position(input.position() + length);
+    return value;
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer input) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = input.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("malformed varint in span encoding");
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
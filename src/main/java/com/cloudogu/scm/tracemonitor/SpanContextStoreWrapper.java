@@ -23,12 +23,95 @@ import sonia.scm.store.IdGenerator;
 import sonia.scm.store.QueryableType;
 import sonia.scm.trace.SpanContext;
 
+import java.time.Instant;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @QueryableType(idGenerator = IdGenerator.AUTO_INCREMENT, value = SpanContextKind.class)
 public class SpanContextStoreWrapper {
+  /**
+   * Span context of the last occurrence for entries written before span contexts were stored encoded.
+   */
   private SpanContext spanContext;
+  /**
+   * Span context of the last occurrence, encoded by the {@link SpanContextCodec}.
+   */
+  private byte[] encodedSpanContext;
+
+  /**
+   * Number of coalesced occurrences of the span. The span context holds the last occurrence. Entries stored before
+   * coalescing was introduced have a count of zero and represent a single occurrence.
+   */
+  private int count;
+  private Instant firstClosed;
+  private long minDurationMillis;
+  private long maxDurationMillis;
+  private long totalDurationMillis;
+
+  /*
+   * Values of the last occurrence, which are only stored for queries.
+   */
+  private boolean failed;
+  private Instant closed;
+  private long durationMillis;
+  /**
+   * All label values, separated by line breaks.
+   */
+  private String labelValues;
+
+  public SpanContextStoreWrapper(SpanContext spanContext) {
+    long duration = spanContext.duration().toMillis();
+    this.encodedSpanContext = SpanContextCodec.encode(spanContext);
+    updateQueryFields(spanContext);
+    this.count = 1;
+    this.firstClosed = spanContext.getClosed();
+    this.minDurationMillis = duration;
+    this.maxDurationMillis = duration;
+    this.totalDurationMillis = duration;
+  }
+
+  /**
+   * Adds the occurrence to the aggregated values. The values of the last occurrence are only replaced, if the
+   * occurrence has been closed after it, which is returned.
+   */
+  boolean merge(SpanContext occurrence) {
+    long duration = occurrence.duration().toMillis();
+    boolean last = closed == null || occurrence.getClosed().isAfter(closed);
+    if (last) {
+      this.spanContext = null;
+      this.encodedSpanContext = SpanContextCodec.encode(occurrence);
+      updateQueryFields(occurrence);
+    }
+    if (firstClosed == null || occurrence.getClosed().isBefore(firstClosed)) {
+      this.firstClosed = occurrence.getClosed();
+    }
+    this.count++;
+    this.minDurationMillis = Math.min(minDurationMillis, duration);
+    this.maxDurationMillis = Math.max(maxDurationMillis, duration);
+    this.totalDurationMillis += duration;
+    return last;
+  }
+
+  private void updateQueryFields(SpanContext spanContext) {
+    this.failed = spanContext.isFailed();
+    this.closed = spanContext.getClosed();
+    this.durationMillis = spanContext.duration().toMillis();
+    this.labelValues = spanContext.getLabels().values().stream().filter(Objects::nonNull).collect(Collectors.joining("\n"));
+  }
+
+  /**
+   * Returns the span context of the last occurrence. The kind is not stored with the entry, it is the parent id of
+   * the store the entry has been read from.
+   */
+  SpanContext decodeSpanContext(String kind) {
+    if (encodedSpanContext != null) {
+      return SpanContextCodec.decode(kind, encodedSpanContext);
+    }
+    return spanContext;
+  }
 }
 
 class SpanContextKind {
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of a span in the order of {@link StoredSpan#NEWEST_FIRST}, used for keyset paging. A cursor is passed to
+ * clients as an opaque string, which is created with {@link #encode()} and read with {@link #decode(String)}.
+ */
+@Value
+public class SpanCursor {
+
+  Instant closed;
+  String kind;
+  String id;
+
+  public static SpanCursor of(StoredSpan span) {
+    return new SpanCursor(span.getClosed(), span.getKind(), span.getId());
+  }
+
+  /**
+   * Reads a cursor created by {@link #encode()}.
+   *
+   * @throws IllegalArgumentException if the value is not a valid cursor
+   */
+  public static SpanCursor decode(String value) {
+    String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    String[] parts = decoded.split("\\.", 4);
+    if (parts.length != 4 || parts[2].isEmpty()) {
+      throw new IllegalArgumentException("invalid span cursor: " + value);
+    }
+    try {
+      return new SpanCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), parts[3], parts[2]);
+    } catch (NumberFormatException | DateTimeException e) {
+      throw new IllegalArgumentException("invalid span cursor: " + value, e);
+    }
+  }
+
+  /**
+   * The kind is encoded last, because it may contain any character.
+   */
+  public String encode() {
+    String value = closed.getEpochSecond() + "." + closed.getNano() + "." + id + "." + kind;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns {@code true} if the given span comes after this cursor in the order of {@link StoredSpan#NEWEST_FIRST}.
+   */
+  boolean isBefore(StoredSpan span) {
+    int result = span.getClosed().compareTo(closed);
+    if (result == 0) {
+      result = span.getKind().compareTo(kind);
+    }
+    return result < 0 || result == 0 && StoredSpan.ID_ORDER.compare(span.getId(), id) < 0;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Instant;
+
+/**
+ * Formats of the span export. Spans are written one after another, so that an export never has to be held in memory.
+ */
+@Getter
+enum SpanExportFormat {
+
+  NDJSON("application/x-ndjson", "ndjson") {
+    @Override
+    SpanWriter open(Writer writer) throws IOException {
+      JsonGenerator generator = JSON.createGenerator(writer);
+      generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+      return new SpanWriter() {
+        @Override
+        public void write(StoredSpan span) throws IOException {
+          generator.writeStartObject();
+          StoredSpanSerializer.writeFields(generator, span, SpanFields.ALL);
+          generator.writeEndObject();
+          generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+          generator.close();
+        }
+      };
+    }
+  },
+
+  /**
+   * One row per span. Labels differ between kinds, so that they are written as JSON object into a single column.
+   */
+  CSV("text/csv", "csv") {
+    @Override
+    SpanWriter open(Writer writer) throws IOException {
+      writer.write("id,kind,labels,opened,closed,durationInMillis,failed,count,firstClosed,minDurationInMillis,maxDurationInMillis,averageDurationInMillis\r\n");
+      return new SpanWriter() {
+        @Override
+        public void write(StoredSpan span) throws IOException {
+          StringWriter labels = new StringWriter();
+          try (JsonGenerator generator = JSON.createGenerator(labels)) {
+            StoredSpanSerializer.writeLabels(generator, span.getLabels());
+          }
+          writer.write(String.join(",",
+            escape(span.getId()),
+            escape(span.getKind()),
+            escape(labels.toString()),
+            format(span.getSpanContext().getOpened()),
+            format(span.getClosed()),
+            String.valueOf(span.getDurationMillis()),
+            String.valueOf(span.isFailed()),
+            String.valueOf(span.getCount()),
+            format(span.getFirstClosed()),
+            String.valueOf(span.getMinDurationMillis()),
+            String.valueOf(span.getMaxDurationMillis()),
+            String.valueOf(span.getAverageDurationMillis())
+          ));
+          writer.write("\r\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+          writer.close();
+        }
+      };
+    }
+  };
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private final String mediaType;
+  private final String extension;
+
+  SpanExportFormat(String mediaType, String extension) {
+    this.mediaType = mediaType;
+    this.extension = extension;
+  }
+
+  /**
+   * Starts the export to the writer. Closing the returned span writer closes the writer, too.
+   */
+  abstract SpanWriter open(Writer writer) throws IOException;
+
+  static SpanExportFormat of(String name) {
+    for (SpanExportFormat format : values()) {
+      if (format.extension.equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("unknown export format: " + name);
+  }
+
+  private static String format(Instant instant) {
+    return instant == null ? "" : instant.toString();
+  }
+
+  private static String escape(String value) {
+    if (value == null) {
+      return "";
+    }
+    if (value.contains(",") || value.contains("\"") || value.contains("\r") || value.contains("\n")) {
+      return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    return value;
+  }
+
+  interface SpanWriter extends Closeable {
+
+    void write(StoredSpan span) throws IOException;
+  }
+}
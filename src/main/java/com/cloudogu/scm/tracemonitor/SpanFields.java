@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Properties of spans which are written to a response, parsed from a comma separated list like
+ * {@code kind,closed,labels.url}. A property {@code labels.<key>} restricts the labels to the given keys, whereas
+ * {@code labels} writes all of them.
+ */
+final class SpanFields {
+
+  static final Set<String> PROPERTIES = Set.of(
+    "id", "kind", "labels", "opened", "closed", "durationInMillis", "failed", "count", "firstClosed",
+    "minDurationInMillis", "maxDurationInMillis", "averageDurationInMillis"
+  );
+
+  static final SpanFields ALL = new SpanFields(PROPERTIES, null);
+
+  private static final String LABEL_PREFIX = "labels.";
+
+  private final Set<String> properties;
+  /**
+   * Keys of the labels to write or {@code null} for all labels.
+   */
+  private final Set<String> labelKeys;
+
+  private SpanFields(Set<String> properties, Set<String> labelKeys) {
+    this.properties = properties;
+    this.labelKeys = labelKeys;
+  }
+
+  /**
+   * Parses the list of fields. An empty list selects all fields.
+   *
+   * @throws IllegalArgumentException if one of the fields is not a property of spans
+   */
+  static SpanFields parse(String fields) {
+    if (Strings.isNullOrEmpty(fields)) {
+      return ALL;
+    }
+    Set<String> properties = new HashSet<>();
+    Set<String> labelKeys = new HashSet<>();
+    boolean allLabels = false;
+    for (String field : Splitter.on(',').trimResults().omitEmptyStrings().split(fields)) {
+      if (field.startsWith(LABEL_PREFIX) && field.length() > LABEL_PREFIX.length()) {
+        properties.add("labels");
+        labelKeys.add(field.substring(LABEL_PREFIX.length()));
+      } else if (PROPERTIES.contains(field)) {
+        properties.add(field);
+        allLabels |= field.equals("labels");
+      } else {
+        throw new IllegalArgumentException("unknown field: " + field);
+      }
+    }
+    if (properties.isEmpty()) {
+      return ALL;
+    }
+    return new SpanFields(properties, allLabels ? null : labelKeys);
+  }
+
+  boolean includes(String property) {
+    return properties.contains(property);
+  }
+
+  boolean includesLabel(String key) {
+    return labelKeys == null || labelKeys.contains(key);
+  }
+
+  @Override
+  public String toString() {
+    return properties + (labelKeys == null ? "" : " labels " + labelKeys);
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.cloudogu.scm.tracemonitor.config.OverflowPolicy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.plugin.Extension;
+import sonia.scm.trace.SpanContext;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decouples span capture from the store. Every span kind has its own lane with a bounded queue, which accepts spans
+ * without blocking the exporting thread. If a queue overflows, the configured {@link OverflowPolicy} decides which
+ * span is dropped. A lane is drained by at most one writer at a time, which writes the queued spans in batches with
+ * one transaction per batch. Lanes of different kinds are written in parallel. If a batch cannot be stored, its spans
+ * are written one by one, so that only the spans which cannot be stored themselves are lost.
+ * <p>
+ * Stored spans are published to the {@link LiveTail} and failures are reported with the id of the stored span. Failed
+ * spans which could not be stored are reported without id.
+ * <p>
+ * On shutdown, the queued spans are written until the shutdown timeout has elapsed, the remaining spans are lost.
+ */
+@Slf4j
+@Extension
+@Singleton
+public class SpanIngestion implements ServletContextListener {
+
+  private static final int LANE_CAPACITY = 1_000;
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final int MAX_WRITER_THREADS = 8;
+  private static final long MAX_BLOCK_MILLIS = 100;
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+  private final TraceStore store;
+  private final GlobalConfigStore globalConfigStore;
+  private final TraceMonitorStatistics statistics;
+  private final LiveTail liveTail;
+  private final ScmEventBus eventBus;
+  private final ExecutorService executor;
+  private final long shutdownTimeoutMillis;
+  private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+  @Inject
+  SpanIngestion(TraceStore store, GlobalConfigStore globalConfigStore, TraceMonitorStatistics statistics, LiveTail liveTail, ScmEventBus eventBus) {
+    this(store, globalConfigStore, statistics, liveTail, eventBus, Executors.newFixedThreadPool(
+      Math.min(Runtime.getRuntime().availableProcessors(), MAX_WRITER_THREADS),
+      new ThreadFactoryBuilder().setNameFormat("TraceMonitorIngestion-%d").setDaemon(true).build()
+    ), SHUTDOWN_TIMEOUT_MILLIS);
+  }
+
+  @VisibleForTesting
+  SpanIngestion(TraceStore store, GlobalConfigStore globalConfigStore, TraceMonitorStatistics statistics, LiveTail liveTail, ScmEventBus eventBus, ExecutorService executor, long shutdownTimeoutMillis) {
+    this.store = store;
+    this.globalConfigStore = globalConfigStore;
+    this.statistics = statistics;
+    this.liveTail = liveTail;
+    this.eventBus = eventBus;
+    this.executor = executor;
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+  }
+
+  void offer(SpanContext span) {
+    lanes.computeIfAbsent(span.getKind(), Lane::new).offer(span);
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        log.warn("trace ingestion did not finish in time, remaining spans are not stored");
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    int remaining = 0;
+    for (Lane lane : lanes.values()) {
+      remaining += lane.drainUntil(deadline);
+    }
+    if (remaining > 0) {
+      log.warn("trace ingestion did not finish in time, {} remaining spans are not stored", remaining);
+    }
+  }
+
+  private void reportFailure(SpanContext span, String id) {
+    if (span.isFailed()) {
+      eventBus.post(new RequestFailedEvent(span, id));
+    }
+  }
+
+  private OverflowPolicy overflowPolicy() {
+    OverflowPolicy policy = globalConfigStore.get().getOverflowPolicy();
+    return policy != null ? policy : OverflowPolicy.DROP_OLDEST;
+  }
+
+  private class Lane {
+
+    private final String kind;
+    private final TraceMonitorStatistics.KindStatistics kindStatistics;
+    private final BlockingDeque<SpanContext> queue = new LinkedBlockingDeque<>(LANE_CAPACITY);
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    Lane(String kind) {
+      this.kind = kind;
+      this.kindStatistics = statistics.kind(kind);
+    }
+
+    void offer(SpanContext span) {
+      if (enqueue(span)) {
+        kindStatistics.recordAccepted();
+        scheduleDrain();
+      } else {
+        drop(span);
+      }
+    }
+
+    private void drop(SpanContext span) {
+      kindStatistics.recordDropped();
+      reportFailure(span, null);
+    }
+
+    /**
+     * The configuration is only read, if the queue is full. So there is no overhead for spans in the regular case.
+     */
+    private boolean enqueue(SpanContext span) {
+      if (queue.offerLast(span)) {
+        return true;
+      }
+      log.debug("trace ingestion queue for kind '{}' is full", kind);
+      return switch (overflowPolicy()) {
+        case BLOCK -> enqueueBlocking(span);
+        case DROP_OLDEST -> enqueueDroppingOldest(span);
+        case DROP_NEWEST -> false;
+        case DROP_SUCCESSFUL -> enqueueDroppingSuccessful(span);
+      };
+    }
+
+    private boolean enqueueBlocking(SpanContext span) {
+      long start = System.nanoTime();
+      try {
+        return queue.offerLast(span, MAX_BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        kindStatistics.recordProducerWait(System.nanoTime() - start);
+      }
+    }
+
+    private boolean enqueueDroppingOldest(SpanContext span) {
+      do {
+        SpanContext oldest = queue.pollFirst();
+        if (oldest != null) {
+          drop(oldest);
+        }
+      } while (!queue.offerLast(span));
+      return true;
+    }
+
+    private boolean enqueueDroppingSuccessful(SpanContext span) {
+      if (!span.isFailed()) {
+        return false;
+      }
+      if (removeFirstSuccessful()) {
+        kindStatistics.recordDropped();
+      } else {
+        SpanContext oldest = queue.pollFirst();
+        if (oldest != null) {
+          drop(oldest);
+        }
+      }
+      return queue.offerLast(span);
+    }
+
+    private boolean removeFirstSuccessful() {
+      Iterator<SpanContext> iterator = queue.iterator();
+      while (iterator.hasNext()) {
+        if (!iterator.next().isFailed()) {
+          iterator.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void scheduleDrain() {
+      if (draining.compareAndSet(false, true)) {
+        try {
+          executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+          log.debug("ingestion executor rejected drain, writing spans of kind '{}' on calling thread", kind);
+          drain();
+        }
+      }
+    }
+
+    void drain() {
+      do {
+        List<SpanContext> batch = new ArrayList<>();
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+          write(batch);
+          batch = new ArrayList<>();
+        }
+        draining.set(false);
+      } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Writes the queued spans until the deadline has passed and returns the number of spans which are left.
+     */
+    int drainUntil(long deadline) {
+      List<SpanContext> batch = new ArrayList<>();
+      while (System.nanoTime() - deadline < 0 && queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+        write(batch);
+        batch = new ArrayList<>();
+      }
+      return queue.size();
+    }
+
+    private void write(List<SpanContext> batch) {
+      List<StoredSpan> written;
+      try {
+        written = store.addAll(kind, batch);
+      } catch (Exception e) {
+        if (batch.size() == 1) {
+          log.warn("could not store span of kind '{}'", kind, e);
+          reportFailure(batch.get(0), null);
+        } else {
+          log.debug("could not store batch of {} spans of kind '{}', writing them one by one", batch.size(), kind, e);
+          writeOneByOne(batch);
+        }
+        return;
+      }
+      publish(written);
+    }
+
+    private void writeOneByOne(List<SpanContext> batch) {
+      int lost = 0;
+      Exception failure = null;
+      for (SpanContext span : batch) {
+        List<StoredSpan> written;
+        try {
+          written = store.addAll(kind, List.of(span));
+        } catch (Exception e) {
+          lost++;
+          failure = e;
+          reportFailure(span, null);
+          continue;
+        }
+        publish(written);
+      }
+      if (failure != null) {
+        log.warn("could not store {} of {} spans of kind '{}'", lost, batch.size(), kind, failure);
+      }
+    }
+
+    private void publish(List<StoredSpan> written) {
+      for (StoredSpan span : written) {
+        liveTail.publish(span);
+        reportFailure(span.getSpanContext(), span.getId());
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.base.Strings;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Filter for stored spans. Queries are immutable, conditions are added with the {@code with} methods.
+ */
+@Value
+@With
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class SpanQuery {
+
+  /**
+   * Kind of the spans or {@code null} for spans of all kinds.
+   */
+  String kind;
+  boolean onlyFailed;
+  /**
+   * Text, which has to be contained in at least one label value, or {@code null}.
+   */
+  String labelFilter;
+  /**
+   * Earliest closed timestamp (inclusive) or {@code null}.
+   */
+  Instant from;
+  /**
+   * Latest closed timestamp (exclusive) or {@code null}.
+   */
+  Instant to;
+  /**
+   * Minimal duration in milliseconds (inclusive) or {@code null}.
+   */
+  Long minDurationMillis;
+  /**
+   * Maximal duration in milliseconds (inclusive) or {@code null}.
+   */
+  Long maxDurationMillis;
+  Order order;
+
+  public static SpanQuery all() {
+    return new SpanQuery(null, false, null, null, null, null, null, Order.NEWEST_FIRST);
+  }
+
+  public boolean hasKind() {
+    return !Strings.isNullOrEmpty(kind);
+  }
+
+  public boolean hasLabelFilter() {
+    return !Strings.isNullOrEmpty(labelFilter);
+  }
+
+  public boolean hasTimeRange() {
+    return from != null || to != null;
+  }
+
+  public boolean hasDurationRange() {
+    return minDurationMillis != null || maxDurationMillis != null;
+  }
+
+  /**
+   * Returns {@code true} if spans closed at the given instant are within the range of this query.
+   */
+  boolean includes(Instant closed) {
+    return (from == null || !closed.isBefore(from)) && (to == null || closed.isBefore(to));
+  }
+
+  boolean includesDuration(long durationMillis) {
+    return (minDurationMillis == null || durationMillis >= minDurationMillis)
+      && (maxDurationMillis == null || durationMillis <= maxDurationMillis);
+  }
+
+  boolean matches(StoredSpan span) {
+    return matches(span.isFailed(), span.getClosed(), span.getDurationMillis(), span.getLabels());
+  }
+
+  /**
+   * Returns {@code true} if the span, which has not been stored yet, is of the kind and matches all conditions of
+   * this query.
+   */
+  boolean matches(SpanContext span) {
+    return (!hasKind() || kind.equals(span.getKind()))
+      && matches(span.isFailed(), span.getClosed(), span.duration().toMillis(), span.getLabels());
+  }
+
+  private boolean matches(boolean failed, Instant closed, long durationMillis, Map<String, String> labels) {
+    if (onlyFailed && !failed || !includes(closed) || !includesDuration(durationMillis)) {
+      return false;
+    }
+    return !hasLabelFilter() || labels.values().stream().anyMatch(value -> value != null && value.contains(labelFilter));
+  }
+
+  public enum Order {
+    /**
+     * Newest spans first, as defined by {@link StoredSpan#NEWEST_FIRST}. This is the only order for keyset paging.
+     */
+    NEWEST_FIRST(StoredSpan.NEWEST_FIRST),
+    /**
+     * Slowest spans first, as defined by {@link StoredSpan#SLOWEST_FIRST}.
+     */
+    SLOWEST_FIRST(StoredSpan.SLOWEST_FIRST);
+
+    private final Comparator<StoredSpan> comparator;
+
+    Order(Comparator<StoredSpan> comparator) {
+      this.comparator = comparator;
+    }
+
+    public Comparator<StoredSpan> comparator() {
+      return comparator;
+    }
+  }
+}
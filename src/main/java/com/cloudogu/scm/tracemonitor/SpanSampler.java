@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import sonia.scm.trace.SpanContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Head based sampling of spans, before they are queued for the store. Failed spans are always kept, successful spans
+ * are kept with the sampling rate configured for their kind. The number of kept and discarded successful spans is
+ * counted, so that the stored spans can be extrapolated.
+ */
+@Singleton
+public class SpanSampler {
+
+  private final GlobalConfigStore globalConfigStore;
+  private final TraceMonitorStatistics statistics;
+  private final DoubleSupplier random;
+
+  @Inject
+  SpanSampler(GlobalConfigStore globalConfigStore, TraceMonitorStatistics statistics) {
+    this(globalConfigStore, statistics, () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  @VisibleForTesting
+  SpanSampler(GlobalConfigStore globalConfigStore, TraceMonitorStatistics statistics, DoubleSupplier random) {
+    this.globalConfigStore = globalConfigStore;
+    this.statistics = statistics;
+    this.random = random;
+  }
+
+  boolean sample(SpanContext span) {
+    if (span.isFailed()) {
+      return true;
+    }
+    double rate = globalConfigStore.get().getSamplingRate(span.getKind());
+    boolean sampled = rate >= 1.0 || (rate > 0.0 && random.getAsDouble() < rate);
+    if (sampled) {
+      statistics.kind(span.getKind()).recordSampled();
+    } else {
+      statistics.kind(span.getKind()).recordSampledOut();
+    }
+    return sampled;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Persistent storage engine for spans, one log of entries per kind. Implementations do not have to be safe for
+ * concurrent writes of the same kind, because the {@link TraceStore} serializes them per kind.
+ */
+interface SpanStorage {
+
+  Collection<String> getKinds();
+
+  /**
+   * Reads the newest entries of the kind, newest first, and maps them with their id.
+   */
+  <T> List<T> findNewest(String kind, int limit, BiFunction<String, SpanContextStoreWrapper, T> mapper);
+
+  /**
+   * Reads the entry of the kind with the given id, if there is one.
+   */
+  Optional<StoredSpan> get(String kind, String id, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper);
+
+  /**
+   * Reads the entries of the kind which match the query, ordered by the time they have been closed, newest first. Only
+   * the newest entries of the kind up to the given window are considered, like they are returned by
+   * {@link #findNewest(String, int, BiFunction)}, because the entries beyond the store size are kept until the next
+   * retention.
+   */
+  List<StoredSpan> find(String kind, SpanQuery query, int window, int offset, int limit, BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper);
+
+  /**
+   * Counts the entries of the kind which match the query, among the newest entries up to the given window.
+   */
+  long count(String kind, SpanQuery query, int window);
+
+  /**
+   * Executes all writes of the given consumer for the kind. Either all writes are stored or none of them.
+   */
+  void write(String kind, Consumer<Writer> writes);
+
+  /**
+   * Removes old entries of the kind, so that at least the given amount of the newest entries is kept.
+   */
+  void retain(String kind, int size);
+
+  interface Writer {
+
+    /**
+     * Stores a new entry and returns its id.
+     */
+    String insert(SpanContextStoreWrapper wrapper);
+
+    /**
+     * Stores a new version of the entry and returns its id. Engines which retain entries in the order of their ids
+     * store the entry with a new id, so that it is not removed before the entries which have been written before it.
+     */
+    String update(String id, SpanContextStoreWrapper wrapper);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.Getter;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A span as it is read from the store, together with its id and the aggregated values of coalesced occurrences.
+ */
+@Getter
+@JsonSerialize(using = StoredSpanSerializer.class)
+public class StoredSpan {
+
+  /**
+   * Order of ids. Ids are generated in ascending numerical order, so shorter ids are older ones.
+   */
+  static final Comparator<String> ID_ORDER = Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+  /**
+   * Newest spans first. Spans closed at the same instant are ordered by their kinds and ids, because ids are only
+   * unique per kind, so that the order is total and can be used for keyset paging with {@link SpanCursor}.
+   */
+  public static final Comparator<StoredSpan> NEWEST_FIRST = Comparator.comparing(StoredSpan::getClosed)
+    .thenComparing(StoredSpan::getKind)
+    .thenComparing(StoredSpan::getId, ID_ORDER)
+    .reversed();
+
+  /**
+   * Slowest spans first, spans with the same duration newest first.
+   */
+  public static final Comparator<StoredSpan> SLOWEST_FIRST = Comparator.comparingLong(StoredSpan::getDurationMillis)
+    .reversed()
+    .thenComparing(NEWEST_FIRST);
+
+  private final String id;
+  private final SpanContext spanContext;
+  private final int count;
+  private final Instant firstClosed;
+  private final long minDurationMillis;
+  private final long maxDurationMillis;
+  private final long averageDurationMillis;
+
+  StoredSpan(String id, String kind, SpanContextStoreWrapper wrapper) {
+    this(id, wrapper.decodeSpanContext(kind), wrapper);
+  }
+
+  StoredSpan(String id, SpanContext spanContext, SpanContextStoreWrapper wrapper) {
+    this.id = id;
+    this.spanContext = spanContext;
+    if (wrapper.getCount() > 0) {
+      this.count = wrapper.getCount();
+      this.firstClosed = wrapper.getFirstClosed();
+      this.minDurationMillis = wrapper.getMinDurationMillis();
+      this.maxDurationMillis = wrapper.getMaxDurationMillis();
+      this.averageDurationMillis = wrapper.getTotalDurationMillis() / wrapper.getCount();
+    } else {
+      long duration = spanContext.duration().toMillis();
+      this.count = 1;
+      this.firstClosed = spanContext.getClosed();
+      this.minDurationMillis = duration;
+      this.maxDurationMillis = duration;
+      this.averageDurationMillis = duration;
+    }
+  }
+
+  public String getKind() {
+    return spanContext.getKind();
+  }
+
+  public Map<String, String> getLabels() {
+    return spanContext.getLabels();
+  }
+
+  public Instant getClosed() {
+    return spanContext.getClosed();
+  }
+
+  public boolean isFailed() {
+    return spanContext.isFailed();
+  }
+
+  public long getDurationMillis() {
+    return spanContext.duration().toMillis();
+  }
+}
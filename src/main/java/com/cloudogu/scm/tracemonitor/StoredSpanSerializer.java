@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Writes stored spans straight to the json generator, so that neither a dto nor a copy of the labels is created for
+ * each span of a page.
+ */
+class StoredSpanSerializer extends StdSerializer<StoredSpan> {
+
+  StoredSpanSerializer() {
+    super(StoredSpan.class);
+  }
+
+  @Override
+  public void serialize(StoredSpan span, JsonGenerator generator, SerializerProvider provider) throws IOException {
+    generator.writeStartObject();
+    writeFields(generator, span, SpanFields.ALL);
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes the selected fields of the span into the current object.
+   */
+  static void writeFields(JsonGenerator generator, StoredSpan span, SpanFields fields) throws IOException {
+    if (fields.includes("id")) {
+      generator.writeStringField("id", span.getId());
+    }
+    if (fields.includes("kind")) {
+      generator.writeStringField("kind", span.getKind());
+    }
+    if (fields.includes("labels")) {
+      generator.writeFieldName("labels");
+      writeLabels(generator, span.getLabels(), fields);
+    }
+    writeInstant(generator, fields, "opened", span.getSpanContext().getOpened());
+    writeInstant(generator, fields, "closed", span.getClosed());
+    writeNumber(generator, fields, "durationInMillis", span.getDurationMillis());
+    if (fields.includes("failed")) {
+      generator.writeBooleanField("failed", span.isFailed());
+    }
+    writeNumber(generator, fields, "count", span.getCount());
+    writeInstant(generator, fields, "firstClosed", span.getFirstClosed());
+    writeNumber(generator, fields, "minDurationInMillis", span.getMinDurationMillis());
+    writeNumber(generator, fields, "maxDurationInMillis", span.getMaxDurationMillis());
+    writeNumber(generator, fields, "averageDurationInMillis", span.getAverageDurationMillis());
+  }
+
+  static void writeLabels(JsonGenerator generator, Map<String, String> labels) throws IOException {
+    writeLabels(generator, labels, SpanFields.ALL);
+  }
+
+  private static void writeLabels(JsonGenerator generator, Map<String, String> labels, SpanFields fields) throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, String> label : labels.entrySet()) {
+      if (fields.includesLabel(label.getKey())) {
+        generator.writeStringField(String.valueOf(label.getKey()), label.getValue());
+      }
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeInstant(JsonGenerator generator, SpanFields fields, String name, Instant instant) throws IOException {
+    if (!fields.includes(name)) {
+      return;
+    }
+    if (instant == null) {
+      generator.writeNullField(name);
+    } else {
+      generator.writeStringField(name, instant.toString());
+    }
+  }
+
+  private static void writeNumber(JsonGenerator generator, SpanFields fields, String name, long value) throws IOException {
+    if (fields.includes(name)) {
+      generator.writeNumberField(name, value);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Selects the first elements of an order with a bounded heap, so that only {@code k} elements are kept and ordered
+ * instead of all of them.
+ */
+final class TopK {
+
+  private static final int MAX_INITIAL_CAPACITY = 1_024;
+
+  private TopK() {
+  }
+
+  /**
+   * Returns the first {@code k} elements in the given order.
+   */
+  static <T> List<T> select(Stream<T> elements, Comparator<T> order, int k) {
+    if (k <= 0) {
+      return List.of();
+    }
+    // the head of the heap is the last of the selected elements, which is replaced by better ones
+    PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, MAX_INITIAL_CAPACITY), Collections.reverseOrder(order));
+    elements.forEach(element -> {
+      if (heap.size() < k) {
+        heap.add(element);
+      } else if (order.compare(element, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(element);
+      }
+    });
+    List<T> selected = new ArrayList<>(heap);
+    selected.sort(order);
+    return selected;
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.cloudogu.scm.tracemonitor;
 
-import sonia.scm.event.ScmEventBus;
+import com.cloudogu.scm.tracemonitor.config.CaptureMode;
+import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
+import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
 import sonia.scm.plugin.Extension;
 import sonia.scm.trace.Exporter;
 import sonia.scm.trace.SpanContext;
@@ -26,20 +28,35 @@ import jakarta.inject.Inject;
 @Extension
 public class TraceExporter implements Exporter {
 
-  private final TraceStore store;
-  private final ScmEventBus eventBus;
+  private final GlobalConfigStore globalConfigStore;
+  private final SpanSampler sampler;
+  private final SlowSpanDetector slowSpanDetector;
+  private final SpanIngestion ingestion;
 
   @Inject
-  public TraceExporter(TraceStore store, ScmEventBus eventBus) {
-    this.store = store;
-    this.eventBus = eventBus;
+  public TraceExporter(GlobalConfigStore globalConfigStore, SpanSampler sampler, SlowSpanDetector slowSpanDetector, SpanIngestion ingestion) {
+    this.globalConfigStore = globalConfigStore;
+    this.sampler = sampler;
+    this.slowSpanDetector = slowSpanDetector;
+    this.ingestion = ingestion;
   }
 
+  /**
+   * Failed spans are always captured. They are reported as {@link RequestFailedEvent} by the ingestion, as soon as
+   * they have been stored and have an id.
+   */
   @Override
   public void export(SpanContext span) {
-    store.add(span);
-    if (span.isFailed()) {
-      eventBus.post(new RequestFailedEvent(span));
+    if (isCaptured(span)) {
+      ingestion.offer(span);
     }
   }
+
+  private boolean isCaptured(SpanContext span) {
+    GlobalConfig config = globalConfigStore.get();
+    if (config.getCaptureMode() == CaptureMode.SLOW_AND_FAILED) {
+      return slowSpanDetector.isSlowOrFailed(span, config.getSlowSpanPercentile());
+    }
+    return sampler.sample(span);
+  }
 }
@@ -16,39 +16,65 @@
 
 package com.cloudogu.scm.tracemonitor;
 
+import com.damnhandy.uri.template.UriTemplate;
 import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 import de.otto.edison.hal.HalRepresentation;
 import de.otto.edison.hal.Links;
 import de.otto.edison.hal.paging.NumberedPaging;
 import de.otto.edison.hal.paging.PagingRel;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.apache.shiro.SecurityUtils;
 import sonia.scm.api.v2.resources.ErrorDto;
 import sonia.scm.api.v2.resources.LinkBuilder;
 import sonia.scm.api.v2.resources.ScmPathInfoStore;
-import sonia.scm.trace.SpanContext;
 import sonia.scm.web.VndMediaType;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.damnhandy.uri.template.UriTemplate.fromTemplate;
+import static de.otto.edison.hal.Link.link;
 import static de.otto.edison.hal.Links.linkingTo;
 import static de.otto.edison.hal.paging.NumberedPaging.oneBasedNumberedPaging;
+import static sonia.scm.ContextEntry.ContextBuilder.entity;
+import static sonia.scm.NotFoundException.notFound;
 import static com.cloudogu.scm.tracemonitor.TraceMonitorResource.TRACE_MONITOR_PATH;
 
 @Path(TRACE_MONITOR_PATH)
@@ -56,16 +82,19 @@ public class TraceMonitorResource {
 
   static final String TRACE_MONITOR_PATH = "v2/trace-monitor/";
   static final String TRACE_MONITOR_MEDIA_TYPE = VndMediaType.PREFIX + "trace-monitor" + VndMediaType.SUFFIX;
+  static final String GZIP_MEDIA_TYPE = "application/gzip";
 
   private final TraceStore store;
-  private final SpanContextMapper mapper;
   private final Provider<ScmPathInfoStore> scmPathInfo;
+  private final TraceMonitorStatistics statistics;
+  private final LiveTail liveTail;
 
   @Inject
-  TraceMonitorResource(TraceStore store, SpanContextMapper mapper, Provider<ScmPathInfoStore> pathInfoStore) {
+  TraceMonitorResource(TraceStore store, Provider<ScmPathInfoStore> pathInfoStore, TraceMonitorStatistics statistics, LiveTail liveTail) {
     this.store = store;
-    this.mapper = mapper;
     this.scmPathInfo = pathInfoStore;
+    this.statistics = statistics;
+    this.liveTail = liveTail;
   }
 
   @GET
@@ -85,6 +114,7 @@ public class TraceMonitorResource {
       schema = @Schema(implementation = TraceMonitorResultDto.class)
     )
   )
+  @ApiResponse(responseCode = "304", description = "not modified, the spans did not change since the response with the entity tag of the If-None-Match header")
   @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
   @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
   @ApiResponse(
@@ -95,61 +125,139 @@ public class TraceMonitorResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public TraceMonitorResultDto get(
+  public Response get(
+    @Context Request request,
     @DefaultValue("") @QueryParam("kind") String kind,
     @QueryParam("onlyFailed") boolean onlyFailed,
     @DefaultValue("1") @QueryParam("page") int page,
     @DefaultValue("100") @QueryParam("limit") int limit,
-    @DefaultValue("") @QueryParam("labelFilter") String labelFilter
+    @DefaultValue("") @QueryParam("labelFilter") String labelFilter,
+    @Parameter(description = "Earliest closed timestamp of the spans (inclusive) in ISO-8601 format, e.g. 2024-01-01T14:00:00Z")
+    @QueryParam("from") String from,
+    @Parameter(description = "Latest closed timestamp of the spans (exclusive) in ISO-8601 format, e.g. 2024-01-01T14:15:00Z")
+    @QueryParam("to") String to,
+    @Parameter(description = "Minimal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("minDuration") String minDuration,
+    @Parameter(description = "Maximal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("maxDuration") String maxDuration,
+    @Parameter(description = "Order of the spans, either 'closed' for the newest spans first (default) or 'duration' for the slowest spans first")
+    @DefaultValue("closed") @QueryParam("sort") String sort,
+    @Parameter(description = "Enables keyset paging. Empty for the first page, afterwards the cursor of the 'next' link.")
+    @QueryParam("cursor") String cursor,
+    @Parameter(description = "Comma separated properties of the spans to return, e.g. 'id,kind,closed,labels.url'. All properties are returned by default.")
+    @DefaultValue("") @QueryParam("fields") String fields
   ) {
-    Stream<SpanContextDto> dtos;
-    Stream<SpanContext> spanContexts;
-    if (!Strings.isNullOrEmpty(kind)) {
-      spanContexts = sortByTimestamp(store.get(kind));
-    } else {
-      spanContexts = sortByTimestamp(store.getAll());
-    }
-    dtos = mapSpanContextCollectionToTraceMonitorResultDto(spanContexts);
-
-    if (onlyFailed) {
-      dtos = filterForFailedSpans(dtos);
+    SpanQuery query = createQuery(kind, onlyFailed, labelFilter, from, to, minDuration, maxDuration)
+      .withOrder(parseOrder(sort));
+    SpanFields spanFields = parseFields(fields);
+    EntityTag entityTag = entityTag(store.getVersion(query), query, page, limit, cursor, spanFields);
+    if (cursor != null) {
+      return conditional(request, entityTag, () -> getPageAfter(query, cursor, limit, spanFields, fields));
     }
+    return conditional(request, entityTag, () -> getPage(query, page, limit, spanFields));
+  }
 
-    if (!Strings.isNullOrEmpty(labelFilter)) {
-      dtos = applyLabelFilter(labelFilter, dtos);
+  private static SpanFields parseFields(String fields) {
+    try {
+      return SpanFields.parse(fields);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
     }
+  }
 
-    Collection<SpanContextDto> spans = dtos.collect(Collectors.toList());
-    int totalEntries = spans.size();
+  private TraceMonitorResultDto getPage(SpanQuery query, int page, int limit, SpanFields fields) {
+    int totalEntries = (int) store.count(query);
     NumberedPaging paging = oneBasedNumberedPaging(page, limit, totalEntries);
     int totalPages = computeTotalPages(paging.getPageSize(), totalEntries);
 
-    spans = skipAndlimitSpans(paging.getPageNumber(), paging.getPageSize(), spans);
-    return new TraceMonitorResultDto(createLinks(paging), spans, paging.getPageNumber() - 1, paging.getPageSize(), totalPages);
+    List<StoredSpan> spans = store.find(query, (paging.getPageNumber() - 1) * paging.getPageSize(), paging.getPageSize());
+    return new TraceMonitorResultDto(createLinks(paging), new SelectedSpans(spans, fields), paging.getPageNumber() - 1, paging.getPageSize(), totalPages);
   }
 
-  private Stream<SpanContextDto> applyLabelFilter(String labelFilter, Stream<SpanContextDto> dtos) {
-    return dtos.filter(spanContextDto ->
-      spanContextDto.getLabels().values().stream().anyMatch(label -> label.contains(labelFilter))
-    );
+  private static SpanQuery createQuery(String kind, boolean onlyFailed, String labelFilter, String from, String to, String minDuration, String maxDuration) {
+    return SpanQuery.all()
+      .withKind(Strings.emptyToNull(kind))
+      .withOnlyFailed(onlyFailed)
+      .withLabelFilter(Strings.emptyToNull(labelFilter))
+      .withFrom(parseInstant("from", from))
+      .withTo(parseInstant("to", to))
+      .withMinDurationMillis(parseMillis("minDuration", minDuration))
+      .withMaxDurationMillis(parseMillis("maxDuration", maxDuration));
   }
 
-  private Stream<SpanContext> sortByTimestamp(Collection<SpanContext> spanContexts) {
-    return spanContexts
-      .stream()
-      .sorted(Comparator.comparing(SpanContext::getClosed).reversed());
+  private static Instant parseInstant(String name, String value) {
+    if (Strings.isNullOrEmpty(value)) {
+      return null;
+    }
+    try {
+      return Instant.parse(value);
+    } catch (DateTimeParseException e) {
+      throw new BadRequestException(name + " has to be an ISO-8601 timestamp", e);
+    }
   }
 
-  private Stream<SpanContextDto> filterForFailedSpans(Stream<SpanContextDto> spanContextDtos) {
-    return spanContextDtos.filter(SpanContextDto::isFailed);
+  private static Long parseMillis(String name, String value) {
+    if (Strings.isNullOrEmpty(value)) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new BadRequestException(name + " has to be a number of milliseconds", e);
+    }
   }
 
-  private Stream<SpanContextDto> mapSpanContextCollectionToTraceMonitorResultDto(Stream<SpanContext> spans) {
-    return spans.map(mapper::map);
+  private static SpanQuery.Order parseOrder(String sort) {
+    return switch (sort) {
+      case "", "closed" -> SpanQuery.Order.NEWEST_FIRST;
+      case "duration" -> SpanQuery.Order.SLOWEST_FIRST;
+      default -> throw new BadRequestException("sort has to be either 'closed' or 'duration'");
+    };
   }
 
-  private Collection<SpanContextDto> skipAndlimitSpans(int page, int pageSize, Collection<SpanContextDto> spans) {
-    return spans.stream().skip((long) (page - 1) * pageSize).limit(pageSize).collect(Collectors.toList());
+  /**
+   * Keyset paging: the page starts after the span of the cursor, so neither the former pages have to be read nor the
+   * spans have to be counted. The cursor of the last span is passed on with the 'next' link.
+   */
+  private TraceMonitorResultDto getPageAfter(SpanQuery query, String cursor, int limit, SpanFields spanFields, String fields) {
+    if (limit < 1) {
+      throw new BadRequestException("limit has to be positive");
+    }
+    if (query.getOrder() != SpanQuery.Order.NEWEST_FIRST) {
+      throw new BadRequestException("cursor can only be used with the newest spans first");
+    }
+    SpanCursor after;
+    try {
+      after = cursor.isEmpty() ? null : SpanCursor.decode(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("invalid cursor", e);
+    }
+    List<StoredSpan> page = store.findAfter(query, after, limit);
+    return new TraceMonitorResultDto(createCursorLinks(query, cursor, limit, fields, page), new SelectedSpans(page, spanFields), limit);
+  }
+
+  private Links createCursorLinks(SpanQuery query, String cursor, int limit, String fields, List<StoredSpan> page) {
+    String baseLink = new LinkBuilder(scmPathInfo.get().get(), TraceMonitorResource.class)
+      .method("get")
+      .parameters()
+      .href();
+    UriTemplate template = fromTemplate(baseLink + "{?kind,onlyFailed,labelFilter,from,to,minDuration,maxDuration,cursor,limit,fields}")
+      .set("kind", query.getKind())
+      .set("onlyFailed", query.isOnlyFailed() ? "true" : null)
+      .set("labelFilter", query.getLabelFilter())
+      .set("from", query.getFrom() == null ? null : query.getFrom().toString())
+      .set("to", query.getTo() == null ? null : query.getTo().toString())
+      .set("minDuration", query.getMinDurationMillis())
+      .set("maxDuration", query.getMaxDurationMillis())
+      .set("limit", limit)
+      .set("fields", Strings.emptyToNull(fields));
+
+    Links.Builder linksBuilder = linkingTo()
+      .self(template.set("cursor", cursor).expand());
+    if (page.size() == limit) {
+      linksBuilder.single(link("next", template.set("cursor", SpanCursor.of(page.get(limit - 1)).encode()).expand()));
+    }
+    return linksBuilder.build();
   }
 
   private int computeTotalPages(int pageSize, int totalEntries) {
@@ -180,7 +288,7 @@ public class TraceMonitorResource {
   @Path("available-kinds")
   @Operation(
     summary = "Trace monitor kinds",
-    description = "Returns a list of the trace monitor kinds.",
+    description = "Returns a list of the trace monitor kinds with the number of stored requests and the time the newest one has been closed.",
     tags = "Trace Monitor",
     operationId = "trace_monitor_get_kinds"
   )
@@ -192,6 +300,151 @@ public class TraceMonitorResource {
       schema = @Schema(implementation = List.class)
     )
   )
+  @ApiResponse(responseCode = "304", description = "not modified, the kinds did not change since the response with the entity tag of the If-None-Match header")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response getAvailableKinds(@Context Request request) {
+    return conditional(request, entityTag(store.getKindsVersion(), "kinds"), () -> {
+      final String selfLink = new LinkBuilder(scmPathInfo.get().get(), TraceMonitorResource.class).method("getAvailableKinds").parameters().href();
+      List<KindRegistry.KindSummary> summaries = store.getKindSummaries();
+      List<String> kinds = summaries.stream().map(KindRegistry.KindSummary::getKind).toList();
+      List<KindDto> details = summaries.stream().map(summary -> new KindDto(summary.getKind(), summary.getCount(), summary.getFailedCount(), summary.getLastSeen())).toList();
+      return new AvailableKindsDto(new Links.Builder().self(selfLink).build(), kinds, details);
+    });
+  }
+
+  /**
+   * Strong entity tag of a representation, derived from the version of the spans it is based on and everything else
+   * it depends on, so that it can be computed without reading a single span.
+   */
+  private EntityTag entityTag(String version, Object... parameters) {
+    String value = version + "|" + scmPathInfo.get().get().getApiRestUri() + "|" + Arrays.toString(parameters);
+    return new EntityTag(Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString());
+  }
+
+  /**
+   * Answers with 304 if the client already has the current representation, so that the store is not read.
+   */
+  private Response conditional(Request request, EntityTag entityTag, Supplier<Object> entity) {
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setNoCache(true);
+    cacheControl.setPrivate(true);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+    if (notModified != null) {
+      return notModified.cacheControl(cacheControl).build();
+    }
+    return Response.ok(entity.get()).tag(entityTag).cacheControl(cacheControl).build();
+  }
+
+  @GET
+  @Produces(TRACE_MONITOR_MEDIA_TYPE)
+  @Path("count")
+  @Operation(
+    summary = "Trace monitor count",
+    description = "Returns the number of spans matching the filters. Without label, time and duration filters, the number is taken from counters, so that no span has to be read.",
+    tags = "Trace Monitor",
+    operationId = "trace_monitor_get_count"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = TRACE_MONITOR_MEDIA_TYPE,
+      schema = @Schema(implementation = SpanCountDto.class)
+    )
+  )
+  @ApiResponse(responseCode = "304", description = "not modified, the spans did not change since the response with the entity tag of the If-None-Match header")
+  @ApiResponse(responseCode = "400", description = "invalid filter")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response count(
+    @Context Request request,
+    @DefaultValue("") @QueryParam("kind") String kind,
+    @QueryParam("onlyFailed") boolean onlyFailed,
+    @DefaultValue("") @QueryParam("labelFilter") String labelFilter,
+    @Parameter(description = "Earliest closed timestamp of the spans (inclusive) in ISO-8601 format, e.g. 2024-01-01T14:00:00Z")
+    @QueryParam("from") String from,
+    @Parameter(description = "Latest closed timestamp of the spans (exclusive) in ISO-8601 format, e.g. 2024-01-01T14:15:00Z")
+    @QueryParam("to") String to,
+    @Parameter(description = "Minimal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("minDuration") String minDuration,
+    @Parameter(description = "Maximal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("maxDuration") String maxDuration
+  ) {
+    SpanQuery query = createQuery(kind, onlyFailed, labelFilter, from, to, minDuration, maxDuration);
+    return conditional(request, entityTag(store.getVersion(query), "count", query), () -> {
+      String selfLink = new LinkBuilder(scmPathInfo.get().get(), TraceMonitorResource.class).method("count").parameters().href();
+      return new SpanCountDto(new Links.Builder().self(selfLink).build(), store.count(query));
+    });
+  }
+
+  @GET
+  @Produces(TRACE_MONITOR_MEDIA_TYPE)
+  @Path("spans/{kind}/{id}")
+  @Operation(
+    summary = "Trace monitor span",
+    description = "Returns a single span with all of its properties by the id, which is unique for the kind of the span.",
+    tags = "Trace Monitor",
+    operationId = "trace_monitor_get_span"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = TRACE_MONITOR_MEDIA_TYPE,
+      schema = @Schema(implementation = StoredSpan.class)
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
+  @ApiResponse(
+    responseCode = "404",
+    description = "not found, there is no span of the kind with the id",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public StoredSpan getSpan(@PathParam("kind") String kind, @PathParam("id") String id) {
+    return store.get(kind, id)
+      .orElseThrow(() -> notFound(entity("Span", id).in("SpanKind", kind)));
+  }
+
+  @GET
+  @Produces({"application/x-ndjson", "text/csv", GZIP_MEDIA_TYPE})
+  @Path("export")
+  @Operation(
+    summary = "Trace monitor export",
+    description = "Streams all stored spans matching the filters, newest first, as newline delimited JSON or CSV.",
+    tags = "Trace Monitor",
+    operationId = "trace_monitor_export"
+  )
+  @ApiResponse(responseCode = "200", description = "success")
+  @ApiResponse(responseCode = "400", description = "invalid filter or unknown format")
   @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
   @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
   @ApiResponse(
@@ -202,20 +455,133 @@ public class TraceMonitorResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public AvailableKindsDto getAvailableKinds() {
-    final String selfLink = new LinkBuilder(scmPathInfo.get().get(), TraceMonitorResource.class).method("getAvailableKinds").parameters().href();
-    Collection<String> kinds = store.getKinds();
-    return new AvailableKindsDto(new Links.Builder().self(selfLink).build(), kinds);
+  public Response export(
+    @DefaultValue("") @QueryParam("kind") String kind,
+    @QueryParam("onlyFailed") boolean onlyFailed,
+    @DefaultValue("") @QueryParam("labelFilter") String labelFilter,
+    @Parameter(description = "Earliest closed timestamp of the spans (inclusive) in ISO-8601 format, e.g. 2024-01-01T14:00:00Z")
+    @QueryParam("from") String from,
+    @Parameter(description = "Latest closed timestamp of the spans (exclusive) in ISO-8601 format, e.g. 2024-01-01T14:15:00Z")
+    @QueryParam("to") String to,
+    @Parameter(description = "Minimal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("minDuration") String minDuration,
+    @Parameter(description = "Maximal duration of the spans in milliseconds (inclusive)")
+    @QueryParam("maxDuration") String maxDuration,
+    @Parameter(description = "Format of the export, either 'ndjson' (default) or 'csv'")
+    @DefaultValue("ndjson") @QueryParam("format") String format,
+    @Parameter(description = "Compresses the export with gzip")
+    @QueryParam("gzip") boolean gzip
+  ) {
+    SpanQuery query = createQuery(kind, onlyFailed, labelFilter, from, to, minDuration, maxDuration);
+    SpanExportFormat exportFormat;
+    try {
+      exportFormat = SpanExportFormat.of(format);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("format has to be 'ndjson' or 'csv'", e);
+    }
+    // the permission is checked and the first chunk is read before the response is committed
+    Stream<StoredSpan> spans = store.export(query);
+    StreamingOutput output = outputStream -> {
+      OutputStream target = gzip ? new GZIPOutputStream(outputStream) : outputStream;
+      try (Stream<StoredSpan> closing = spans; SpanExportFormat.SpanWriter writer = exportFormat.open(new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8)))) {
+        for (Iterator<StoredSpan> iterator = closing.iterator(); iterator.hasNext(); ) {
+          writer.write(iterator.next());
+        }
+      }
+    };
+    String fileName = "trace-monitor." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+    return Response.ok(output, gzip ? GZIP_MEDIA_TYPE : exportFormat.getMediaType() + ";charset=UTF-8")
+      .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+      .build();
+  }
+
+  @GET
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  @Path("live")
+  @Operation(
+    summary = "Trace monitor live tail",
+    description = "Pushes newly stored spans matching the filters as server-sent events named 'span'. If the client does not keep up, the oldest pending spans are dropped.",
+    tags = "Trace Monitor",
+    operationId = "trace_monitor_live"
+  )
+  @ApiResponse(responseCode = "200", description = "success")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
+  public void live(
+    @Context SseEventSink sink,
+    @Context Sse sse,
+    @DefaultValue("") @QueryParam("kind") String kind,
+    @QueryParam("onlyFailed") boolean onlyFailed,
+    @DefaultValue("") @QueryParam("labelFilter") String labelFilter
+  ) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    liveTail.subscribe(createQuery(kind, onlyFailed, labelFilter, null, null, null, null), sink, sse);
+  }
+
+  @GET
+  @Produces(TRACE_MONITOR_MEDIA_TYPE)
+  @Path("statistics")
+  @Operation(
+    summary = "Trace monitor statistics",
+    description = "Returns runtime statistics of the trace monitor per kind, like accepted and dropped spans and the time spent waiting.",
+    tags = "Trace Monitor",
+    operationId = "trace_monitor_get_statistics"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = TRACE_MONITOR_MEDIA_TYPE,
+      schema = @Schema(implementation = TraceMonitorStatisticsDto.class)
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user does not have the \"traceMonitor:read\" privilege")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public TraceMonitorStatisticsDto getStatistics() {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    final String selfLink = new LinkBuilder(scmPathInfo.get().get(), TraceMonitorResource.class).method("getStatistics").parameters().href();
+    return new TraceMonitorStatisticsDto(new Links.Builder().self(selfLink).build(), statistics);
   }
 
   @Getter
   @SuppressWarnings("java:S2160") // wo do not need equals and hashcode for dto
   static class AvailableKindsDto extends HalRepresentation {
     private final Collection<String> kinds;
+    private final Collection<KindDto> details;
 
-    public AvailableKindsDto(Links links, Collection<String> kinds) {
+    public AvailableKindsDto(Links links, Collection<String> kinds, Collection<KindDto> details) {
       super(links);
       this.kinds = kinds;
+      this.details = details;
+    }
+  }
+
+  @Getter
+  @AllArgsConstructor
+  @SuppressWarnings("java:S2160") // wo do not need equals and hashcode for dto
+  static class KindDto {
+    private final String kind;
+    private final long count;
+    private final long failedCount;
+    private final Instant lastSeen;
+  }
+
+  @Getter
+  @SuppressWarnings("java:S2160") // wo do not need equals and hashcode for dto
+  static class SpanCountDto extends HalRepresentation {
+    private final long count;
+
+    public SpanCountDto(Links links, long count) {
+      super(links);
+      this.count = count;
     }
   }
 }
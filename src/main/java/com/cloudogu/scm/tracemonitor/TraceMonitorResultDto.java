@@ -16,27 +16,40 @@
 
 package com.cloudogu.scm.tracemonitor;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import de.otto.edison.hal.HalRepresentation;
 import de.otto.edison.hal.Links;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
-import java.util.Collection;
-
 @AllArgsConstructor
 @Getter
 @SuppressWarnings("java:S2160") // we do not need equals and hashcode for dto`s
 public class TraceMonitorResultDto extends HalRepresentation {
-  private final Collection<SpanContextDto> spans;
-  private int page;
+  private final SelectedSpans spans;
+  /**
+   * Number of the page or {@code null} for keyset paging, which follows the 'next' link instead.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Integer page;
   private int pageSize;
-  private int pageTotal;
+  /**
+   * Number of pages or {@code null} for keyset paging, which does not count the spans.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Integer pageTotal;
 
-  public TraceMonitorResultDto(Links links, Collection<SpanContextDto> spans, int page, int pageSize, int pageTotal) {
+  public TraceMonitorResultDto(Links links, SelectedSpans spans, int page, int pageSize, int pageTotal) {
     super(links);
     this.spans = spans;
     this.page = page;
     this.pageSize = pageSize;
     this.pageTotal = pageTotal;
   }
+
+  public TraceMonitorResultDto(Links links, SelectedSpans spans, int pageSize) {
+    super(links);
+    this.spans = spans;
+    this.pageSize = pageSize;
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import jakarta.inject.Singleton;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime counters of the trace monitor itself, collected per span kind. The counters are kept in memory only and
+ * start from zero with every restart.
+ */
+@Singleton
+public class TraceMonitorStatistics {
+
+  private final ConcurrentMap<String, KindStatistics> kinds = new ConcurrentHashMap<>();
+  private final LongAdder labelInternHits = new LongAdder();
+  private final LongAdder labelInternMisses = new LongAdder();
+  private final LongAdder labelInternBytesSaved = new LongAdder();
+  private final LongAdder resultCacheHits = new LongAdder();
+  private final LongAdder resultCacheMisses = new LongAdder();
+
+  public KindStatistics kind(String kind) {
+    return kinds.computeIfAbsent(kind, k -> new KindStatistics());
+  }
+
+  public Map<String, KindStatistics> getKinds() {
+    return Collections.unmodifiableMap(new TreeMap<>(kinds));
+  }
+
+  void recordLabelInternHit(long bytesSaved) {
+    labelInternHits.increment();
+    labelInternBytesSaved.add(bytesSaved);
+  }
+
+  void recordLabelInternMiss() {
+    labelInternMisses.increment();
+  }
+
+  public long getLabelInternHits() {
+    return labelInternHits.sum();
+  }
+
+  public long getLabelInternMisses() {
+    return labelInternMisses.sum();
+  }
+
+  /**
+   * Returns the estimated heap size of label strings, which have been replaced by an already interned copy.
+   */
+  public long getLabelInternBytesSaved() {
+    return labelInternBytesSaved.sum();
+  }
+
+  void recordResultCacheHit() {
+    resultCacheHits.increment();
+  }
+
+  void recordResultCacheMiss() {
+    resultCacheMisses.increment();
+  }
+
+  public long getResultCacheHits() {
+    return resultCacheHits.sum();
+  }
+
+  public long getResultCacheMisses() {
+    return resultCacheMisses.sum();
+  }
+
+  /**
+   * Returns the share of queries, which have been answered from the result cache, or 0 if there was no query yet.
+   */
+  public double getResultCacheHitRate() {
+    long hits = getResultCacheHits();
+    long total = hits + getResultCacheMisses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public static class KindStatistics {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder belowThreshold = new LongAdder();
+    private volatile long slowThresholdMillis = -1;
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder producerWaitNanos = new LongAdder();
+    private final LongAdder writeLockWaits = new LongAdder();
+    private final LongAdder writeLockWaitNanos = new LongAdder();
+
+    void recordAccepted() {
+      accepted.increment();
+    }
+
+    void recordDropped() {
+      dropped.increment();
+    }
+
+    void recordSampled() {
+      sampled.increment();
+    }
+
+    void recordSampledOut() {
+      sampledOut.increment();
+    }
+
+    void recordBelowThreshold() {
+      belowThreshold.increment();
+    }
+
+    void updateSlowThreshold(long millis) {
+      slowThresholdMillis = millis;
+    }
+
+    void recordProducerWait(long nanos) {
+      producerWaits.increment();
+      producerWaitNanos.add(nanos);
+    }
+
+    void recordWriteLockWait(long nanos) {
+      writeLockWaits.increment();
+      writeLockWaitNanos.add(nanos);
+    }
+
+    public long getAccepted() {
+      return accepted.sum();
+    }
+
+    public long getDropped() {
+      return dropped.sum();
+    }
+
+    public long getSampled() {
+      return sampled.sum();
+    }
+
+    public long getSampledOut() {
+      return sampledOut.sum();
+    }
+
+    public long getBelowThreshold() {
+      return belowThreshold.sum();
+    }
+
+    /**
+     * Returns the current duration threshold for slow spans or -1, if there is no estimate yet.
+     */
+    public long getSlowThresholdMillis() {
+      return slowThresholdMillis;
+    }
+
+    public long getProducerWaits() {
+      return producerWaits.sum();
+    }
+
+    public long getProducerWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(producerWaitNanos.sum());
+    }
+
+    public long getWriteLockWaits() {
+      return writeLockWaits.sum();
+    }
+
+    public long getWriteLockWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(writeLockWaitNanos.sum());
+    }
+  }
+}
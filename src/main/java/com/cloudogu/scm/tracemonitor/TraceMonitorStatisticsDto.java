@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import de.otto.edison.hal.HalRepresentation;
+import de.otto.edison.hal.Links;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@SuppressWarnings("java:S2160") // we do not need equals and hashcode for dto`s
+public class TraceMonitorStatisticsDto extends HalRepresentation {
+  private final Map<String, KindStatisticsDto> kinds = new LinkedHashMap<>();
+  private final long labelInternHits;
+  private final long labelInternMisses;
+  private final long labelInternBytesSaved;
+  private final long resultCacheHits;
+  private final long resultCacheMisses;
+  private final double resultCacheHitRate;
+
+  public TraceMonitorStatisticsDto(Links links, TraceMonitorStatistics statistics) {
+    super(links);
+    statistics.getKinds().forEach((kind, kindStatistics) -> kinds.put(kind, new KindStatisticsDto(kindStatistics)));
+    this.labelInternHits = statistics.getLabelInternHits();
+    this.labelInternMisses = statistics.getLabelInternMisses();
+    this.labelInternBytesSaved = statistics.getLabelInternBytesSaved();
+    this.resultCacheHits = statistics.getResultCacheHits();
+    this.resultCacheMisses = statistics.getResultCacheMisses();
+    this.resultCacheHitRate = statistics.getResultCacheHitRate();
+  }
+
+  @Getter
+  public static class KindStatisticsDto {
+    private final long accepted;
+    private final long dropped;
+    private final long sampled;
+    private final long sampledOut;
+    private final long belowThreshold;
+    private final long slowThresholdMillis;
+    private final long producerWaits;
+    private final long producerWaitMillis;
+    private final long writeLockWaits;
+    private final long writeLockWaitMillis;
+
+    KindStatisticsDto(TraceMonitorStatistics.KindStatistics statistics) {
+      this.accepted = statistics.getAccepted();
+      this.dropped = statistics.getDropped();
+      this.sampled = statistics.getSampled();
+      this.sampledOut = statistics.getSampledOut();
+      this.belowThreshold = statistics.getBelowThreshold();
+      this.slowThresholdMillis = statistics.getSlowThresholdMillis();
+      this.producerWaits = statistics.getProducerWaits();
+      this.producerWaitMillis = statistics.getProducerWaitMillis();
+      this.writeLockWaits = statistics.getWriteLockWaits();
+      this.writeLockWaitMillis = statistics.getWriteLockWaitMillis();
+    }
+  }
+}
@@ -16,89 +16,637 @@
 
 package com.cloudogu.scm.tracemonitor;
 
+import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
 import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.cloudogu.scm.tracemonitor.config.StorageEngine;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.SecurityUtils;
-import sonia.scm.store.QueryableMutableStore;
-import sonia.scm.store.QueryableStore;
 import sonia.scm.trace.SpanContext;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 @Singleton
 public class TraceStore {
 
-  private final SpanContextStoreWrapperStoreFactory storeFactory;
+  private static final int WRITE_LOCK_STRIPES = 32;
+  private static final int RECENT_SPANS_CAPACITY = 1_000;
+  private static final int LABEL_INTERNER_SIZE = 10_000;
+  private static final int RESULT_CACHE_SIZE = 500;
+  private static final int EXPORT_CHUNK_SIZE = 1_000;
+  private static final int MAX_READER_THREADS = 4;
+
+  private final QueryableSpanStorage queryableStorage;
+  private final SegmentLogSpanStorage segmentLogStorage;
   private final GlobalConfigStore globalConfigStore;
+  private final TraceMonitorStatistics statistics;
+  private final Striped<Lock> writeLocks = Striped.lock(WRITE_LOCK_STRIPES);
+  private final LabelInterner labelInterner;
+  private final QueryResultCache resultCache;
+  private final ExecutorService readers;
+  private final String instanceId = UUID.randomUUID().toString();
+  private final ConcurrentMap<String, SpanCoalescer> coalescers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, RecentSpans> recentSpans = new ConcurrentHashMap<>();
+  private volatile KindRegistry kindRegistry;
+  private volatile StorageEngine activeEngine;
 
   @Inject
-  public TraceStore(SpanContextStoreWrapperStoreFactory storeFactory, GlobalConfigStore globalConfigStore) {
-    this.storeFactory = storeFactory;
+  TraceStore(QueryableSpanStorage queryableStorage,
+             SegmentLogSpanStorage segmentLogStorage,
+             GlobalConfigStore globalConfigStore,
+             TraceMonitorStatistics statistics) {
+    this.queryableStorage = queryableStorage;
+    this.segmentLogStorage = segmentLogStorage;
     this.globalConfigStore = globalConfigStore;
+    this.statistics = statistics;
+    this.labelInterner = new LabelInterner(LABEL_INTERNER_SIZE, statistics);
+    this.resultCache = new QueryResultCache(RESULT_CACHE_SIZE, statistics);
+    this.readers = createReaders();
   }
 
-  public Collection<SpanContext> getAll() {
+  /**
+   * Returns the newest spans of all kinds, up to the store size for each kind, so that frequent kinds do not crowd out
+   * the others. As long as the configured store size fits into the in-memory tier of recent spans, the store is not
+   * queried. Otherwise, the kinds are read from the storage engine in parallel.
+   */
+  public Collection<StoredSpan> getAll() {
     SecurityUtils.getSubject().checkPermission("traceMonitor:read");
     log.debug("reading all spans");
-    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.getOverall()) {
-      return store
-        .query()
-        .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.DESC)
-        .findAll(0, globalConfigStore.get().getStoreSize())
+    int storeSize = globalConfigStore.get().getStoreSize();
+    List<List<StoredSpan>> newest;
+    if (storeSize > RECENT_SPANS_CAPACITY) {
+      SpanStorage storage = storage();
+      newest = readKinds(getKnownKinds(), kind -> ordered(storage.findNewest(kind, storeSize, mapper(kind)), StoredSpan.NEWEST_FIRST));
+    } else {
+      newest = getKnownKinds()
         .stream()
-        .map(SpanContextStoreWrapper::getSpanContext)
+        .map(kind -> ordered(recentSpans(kind).getNewest(storeSize), StoredSpan.NEWEST_FIRST))
         .toList();
     }
+    return merge(newest, StoredSpan.NEWEST_FIRST).toList();
   }
 
-  public Collection<String> getKinds() {
-    log.debug("reading all kinds of spans");
-    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.getOverall()) {
-      return store
-        .query()
-        .project(SpanContextStoreWrapperQueryFields.SPANCONTEXTKIND_ID)
-        .distinct()
-        .findAll()
+  /**
+   * Finds the spans matching the query in the order of the query. As long as the configured store size fits into the
+   * in-memory tier of recent spans, the newest spans of this tier are filtered. Otherwise, the query is passed to the
+   * storage engine together with the store size, so that only the requested page of the newest spans of each kind has
+   * to be read. The spans of several kinds are read up to the
+   * requested page for each kind, from the storage engine in parallel, and merged lazily, so that only the spans up to
+   * the requested page are compared.
+   * Results are cached until new spans of the kind are written.
+   */
+  public List<StoredSpan> find(SpanQuery query, int offset, int limit) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    return resultCache.get("find", query, resultParameters(offset, limit), () -> {
+      log.debug("finding spans for {}", query);
+      return query(query, offset, limit);
+    });
+  }
+
+  /**
+   * Finds the spans matching the query, which follow the given cursor in the order of {@link StoredSpan#NEWEST_FIRST}.
+   * In contrast to {@link #find(SpanQuery, int, int)}, the spans of former pages neither have to be skipped nor
+   * counted, and spans added in the meantime do not shift the following pages.
+   *
+   * @param cursor position of the last span of the former page or {@code null} for the first page
+   */
+  public List<StoredSpan> findAfter(SpanQuery query, SpanCursor cursor, int limit) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    if (query.getOrder() != SpanQuery.Order.NEWEST_FIRST) {
+      throw new IllegalArgumentException("keyset paging is only supported for the newest spans first");
+    }
+    return resultCache.get("findAfter", query, resultParameters(cursor, limit), () -> {
+      log.debug("finding spans for {} after {}", query, cursor);
+      return List.copyOf(queryAfter(query, cursor, limit));
+    });
+  }
+
+  /**
+   * Streams all spans matching the query, newest first. The spans are read lazily in chunks with keyset paging and
+   * bypass the result cache, so that the memory needed does not depend on the number of stored spans. The first chunk
+   * is read immediately.
+   */
+  public Stream<StoredSpan> export(SpanQuery query) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    log.debug("exporting spans for {}", query);
+    SpanQuery newestFirst = query.withOrder(SpanQuery.Order.NEWEST_FIRST);
+    return Stream.iterate(
+        queryAfter(newestFirst, null, EXPORT_CHUNK_SIZE),
+        chunk -> !chunk.isEmpty(),
+        chunk -> chunk.size() < EXPORT_CHUNK_SIZE
+          ? List.of()
+          : queryAfter(newestFirst, SpanCursor.of(chunk.get(chunk.size() - 1)), EXPORT_CHUNK_SIZE)
+      )
+      .flatMap(List::stream);
+  }
+
+  private List<StoredSpan> queryAfter(SpanQuery query, SpanCursor cursor, int limit) {
+    List<StoredSpan> page = new ArrayList<>();
+    SpanQuery remaining = query;
+    if (cursor != null) {
+      findClosedAt(query, cursor.getClosed())
         .stream()
-        .map(row -> row[0].toString())
-        .sorted()
+        .filter(cursor::isBefore)
+        .limit(limit)
+        .forEach(page::add);
+      remaining = query.withTo(earliest(query.getTo(), cursor.getClosed()));
+    }
+    if (page.size() < limit) {
+      page.addAll(findPage(remaining, limit - page.size()));
+    }
+    return page;
+  }
+
+  /**
+   * The storage engines order spans by their closed timestamp only. To get a stable page, spans closed at the same
+   * instant as the last span of the page are read completely and ordered by their kinds and ids.
+   */
+  private List<StoredSpan> findPage(SpanQuery query, int limit) {
+    List<StoredSpan> page = new ArrayList<>(query(query, 0, limit));
+    if (page.size() == limit) {
+      Instant last = page.get(limit - 1).getClosed();
+      page.removeIf(span -> span.getClosed().equals(last));
+      findClosedAt(query, last).stream().limit(limit - page.size()).forEach(page::add);
+    }
+    page.sort(StoredSpan.NEWEST_FIRST);
+    return page;
+  }
+
+  private static Instant earliest(Instant to, Instant closed) {
+    return to == null || closed.isBefore(to) ? closed : to;
+  }
+
+  private List<StoredSpan> findClosedAt(SpanQuery query, Instant closed) {
+    if (!query.includes(closed)) {
+      return List.of();
+    }
+    List<StoredSpan> spans = new ArrayList<>(query(query.withFrom(closed).withTo(closed.plusNanos(1)), 0, Integer.MAX_VALUE));
+    spans.sort(StoredSpan.NEWEST_FIRST);
+    return spans;
+  }
+
+  private List<StoredSpan> query(SpanQuery query, int offset, int limit) {
+    int storeSize = globalConfigStore.get().getStoreSize();
+    int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    Comparator<StoredSpan> order = query.getOrder().comparator();
+    Collection<String> kinds = getKnownKinds(query);
+    List<List<StoredSpan>> pages;
+    if (storeSize <= RECENT_SPANS_CAPACITY) {
+      pages = kinds.stream()
+        .map(kind -> TopK.select(findRecent(kind, query, storeSize).stream(), order, end))
         .toList();
+    } else {
+      SpanStorage storage = storage();
+      if (kinds.size() == 1) {
+        String kind = kinds.iterator().next();
+        return storage.find(kind, query, storeSize, offset, limit, mapper(kind));
+      }
+      pages = readKinds(kinds, kind -> ordered(storage.find(kind, query, storeSize, 0, end, mapper(kind)), order));
+    }
+    return merge(pages, order).skip(offset).limit(limit).toList();
+  }
+
+  /**
+   * Reads the spans of each kind from the storage engine. Every kind is kept in a store of its own, so that several
+   * kinds are read in parallel on a few threads of their own, which do not compete with other parallel streams.
+   */
+  private List<List<StoredSpan>> readKinds(Collection<String> kinds, Function<String, List<StoredSpan>> reader) {
+    if (kinds.size() <= 1) {
+      return kinds.stream().map(reader).toList();
+    }
+    List<CompletableFuture<List<StoredSpan>>> reads = kinds.stream()
+      .map(kind -> CompletableFuture.supplyAsync(() -> reader.apply(kind), readers))
+      .toList();
+    try {
+      return reads.stream().map(CompletableFuture::join).toList();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The threads of the readers are only kept while they are used, because the store has no lifecycle to shut them
+   * down.
+   */
+  private static ExecutorService createReaders() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      MAX_READER_THREADS,
+      MAX_READER_THREADS,
+      30,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      new ThreadFactoryBuilder().setNameFormat("TraceMonitorReader-%d").setDaemon(true).build()
+    );
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The storage engines and the in-memory tier order spans by their closed timestamp only, or by the time they have
+   * been written. Spans which are ordered already are sorted in linear time.
+   */
+  private static List<StoredSpan> ordered(List<StoredSpan> spans, Comparator<StoredSpan> order) {
+    List<StoredSpan> ordered = new ArrayList<>(spans);
+    ordered.sort(order);
+    return ordered;
+  }
+
+  /**
+   * Merges spans of several kinds, each of them in the given order, lazily with a heap of the next span of each kind.
+   * Only the spans which are actually consumed are compared, so that a page needs as many steps as it has spans.
+   */
+  private static Stream<StoredSpan> merge(List<List<StoredSpan>> spansOfKinds, Comparator<StoredSpan> order) {
+    if (spansOfKinds.size() == 1) {
+      return spansOfKinds.get(0).stream();
+    }
+    Iterator<StoredSpan> merged = Iterators.mergeSorted(spansOfKinds.stream().map(List::iterator).toList(), order);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Counts the spans matching the query.
+   */
+  public long count(SpanQuery query) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    return resultCache.get("count", query, resultParameters(), () -> queryCount(query));
+  }
+
+  /**
+   * Returns a version of the spans the query refers to, without reading them. The version changes whenever spans of
+   * the kind of the query, or of any kind for queries over all kinds, have been written or cleaned up, whenever the
+   * storage engine or the store size is changed, and with every restart.
+   */
+  public String getVersion(SpanQuery query) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    return version(resultCache.generation(query));
+  }
+
+  /**
+   * Returns a version of the kinds, which changes whenever spans of any kind have been written or cleaned up.
+   */
+  public String getKindsVersion() {
+    return version(resultCache.generation(SpanQuery.all()));
+  }
+
+  private String version(long generation) {
+    GlobalConfig config = globalConfigStore.get();
+    return instanceId + ":" + config.getStorageEngine() + ":" + config.getStoreSize() + ":" + generation;
+  }
+
+  /**
+   * Results depend on the storage engine and the store size, too, so that they are part of the cache key.
+   */
+  private List<Object> resultParameters(Object... parameters) {
+    GlobalConfig config = globalConfigStore.get();
+    List<Object> result = new ArrayList<>(parameters.length + 2);
+    result.add(config.getStorageEngine());
+    result.add(config.getStoreSize());
+    result.addAll(Arrays.asList(parameters));
+    return result;
+  }
+
+  private long queryCount(SpanQuery query) {
+    int storeSize = globalConfigStore.get().getStoreSize();
+    OptionalLong registered = countRegistered(query, storeSize);
+    if (registered.isPresent()) {
+      return registered.getAsLong();
+    }
+    if (storeSize <= RECENT_SPANS_CAPACITY) {
+      return getKnownKinds(query).stream()
+        .mapToLong(kind -> findRecent(kind, query, storeSize).size())
+        .sum();
+    }
+    SpanStorage storage = storage();
+    return getKnownKinds(query).stream()
+      .mapToLong(kind -> storage.count(kind, query, storeSize))
+      .sum();
+  }
+
+  /**
+   * Queries, which filter by kind and failed only, are answered with the counters of the kind registry. Reads show the
+   * newest entries of each kind up to the store size, so that the entries of a kind are counted as long as they fit
+   * into the store size, and the store size otherwise. In the latter case, failed entries can only be counted by a
+   * scan.
+   */
+  private OptionalLong countRegistered(SpanQuery query, int storeSize) {
+    if (query.hasLabelFilter() || query.hasTimeRange() || query.hasDurationRange()) {
+      return OptionalLong.empty();
+    }
+    KindRegistry registry = kindRegistry();
+    Collection<String> kinds = getKnownKinds(query);
+    long count = 0;
+    for (String kind : kinds) {
+      List<String> single = List.of(kind);
+      if (registry.count(single, false) <= storeSize) {
+        count += registry.count(single, query.isOnlyFailed());
+      } else if (query.isOnlyFailed()) {
+        return OptionalLong.empty();
+      } else {
+        count += storeSize;
+      }
     }
+    return OptionalLong.of(count);
+  }
+
+  /**
+   * The in-memory tier is kept in the order the spans have been written, which is not the order they have been closed
+   * in, so that time ranges are matched with every span. Label filters are looked up in the trigram index of the kind,
+   * so that only the label values of candidates have to be searched.
+   */
+  private List<StoredSpan> findRecent(String kind, SpanQuery query, int storeSize) {
+    RecentSpans spans = recentSpans(kind);
+    List<StoredSpan> newest = spans.getNewest(storeSize);
+    Optional<Set<String>> labelCandidates = query.hasLabelFilter()
+      ? spans.getLabelCandidates(query.getLabelFilter())
+      : Optional.empty();
+    return newest.stream()
+      .filter(span -> labelCandidates.map(ids -> ids.contains(span.getId())).orElse(true))
+      .filter(query::matches)
+      .toList();
+  }
+
+  private Collection<String> getKnownKinds(SpanQuery query) {
+    if (!query.hasKind()) {
+      return getKnownKinds();
+    }
+    return getKnownKinds().contains(query.getKind()) ? List.of(query.getKind()) : List.of();
+  }
+
+  public Collection<String> getKinds() {
+    log.debug("reading all kinds of spans");
+    return getKnownKinds()
+      .stream()
+      .sorted()
+      .toList();
+  }
+
+  /**
+   * Returns the kinds together with the number of their stored entries and the time they have been seen last. The
+   * store is not read for this.
+   */
+  public List<KindRegistry.KindSummary> getKindSummaries() {
+    return kindRegistry().getSummaries();
   }
 
   public void cleanUp() {
     log.debug("cleaning up span stores");
-    getKinds()
+    SpanStorage storage = storage();
+    KindRegistry registry = kindRegistry();
+    List.copyOf(registry.getKinds())
       .forEach(kind -> {
-        try (QueryableMutableStore<SpanContextStoreWrapper> store = storeFactory.getMutable(kind)) {
-          store.query()
-            .orderBy(SpanContextStoreWrapperQueryFields.SPANCONTEXTKIND_ID, QueryableStore.Order.DESC)
-            .retain(globalConfigStore.get().getStoreSize());
+        Lock lock = lockForWrite(kind);
+        try {
+          storage.retain(kind, globalConfigStore.get().getStoreSize());
+          registry.recordRetention(kind, storage.count(kind, SpanQuery.all(), Integer.MAX_VALUE), storage.count(kind, SpanQuery.all().withOnlyFailed(true), Integer.MAX_VALUE));
+          coalescer(kind).clear();
+          recentSpans.remove(kind);
+          resultCache.invalidate(kind);
+        } finally {
+          lock.unlock();
         }
       });
   }
 
-  public Collection<SpanContext> get(String kind) {
+  /**
+   * Returns the newest spans of the given kind. As long as the configured store size fits into the in-memory tier of
+   * recent spans, the store is only queried once to fill this tier.
+   */
+  public Collection<StoredSpan> get(String kind) {
     SecurityUtils.getSubject().checkPermission("traceMonitor:read");
     log.debug("reading all spans for kind '{}'", kind);
-    try (QueryableStore<SpanContextStoreWrapper> store = storeFactory.get(kind)) {
-      return store
-        .query()
-        .orderBy(SpanContextStoreWrapperQueryFields.INTERNAL_ID, QueryableStore.Order.DESC)
-        .findAll(0, globalConfigStore.get().getStoreSize())
+    if (!getKnownKinds().contains(kind)) {
+      return List.of();
+    }
+    return getNewest(kind, globalConfigStore.get().getStoreSize());
+  }
+
+  /**
+   * Looks up a single span of the kind by its id. As long as the configured store size fits into the in-memory tier of
+   * recent spans, only the spans of this tier are visible, like for all other reads. Former ids of coalesced spans,
+   * which have been stored with a new id, are resolved to the current entry.
+   */
+  public Optional<StoredSpan> get(String kind, String requestedId) {
+    SecurityUtils.getSubject().checkPermission("traceMonitor:read");
+    log.debug("reading span '{}' of kind '{}'", requestedId, kind);
+    if (!getKnownKinds().contains(kind)) {
+      return Optional.empty();
+    }
+    String id = coalescer(kind).currentId(requestedId);
+    int storeSize = globalConfigStore.get().getStoreSize();
+    if (storeSize > RECENT_SPANS_CAPACITY) {
+      return storage().get(kind, id, mapper(kind));
+    }
+    return recentSpans(kind).getNewest(storeSize)
+      .stream()
+      .filter(span -> span.getId().equals(id))
+      .findFirst();
+  }
+
+  private List<StoredSpan> getNewest(String kind, int storeSize) {
+    if (storeSize > RECENT_SPANS_CAPACITY) {
+      return findNewest(kind, storeSize);
+    }
+    return recentSpans(kind).getNewest(storeSize);
+  }
+
+  private Collection<String> getKnownKinds() {
+    return kindRegistry().getKinds();
+  }
+
+  /**
+   * Returns the registry of kinds of the active storage engine, which is seeded on first access. Writers have to call
+   * this before they acquire their write lock, so that seeding never waits for a write lock.
+   */
+  private KindRegistry kindRegistry() {
+    SpanStorage storage = storage();
+    KindRegistry registry = kindRegistry;
+    if (registry == null) {
+      synchronized (this) {
+        registry = kindRegistry;
+        if (registry == null) {
+          registry = seedKindRegistry(storage);
+          kindRegistry = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  private static KindRegistry seedKindRegistry(SpanStorage storage) {
+    log.debug("seeding registry of span kinds");
+    KindRegistry registry = new KindRegistry();
+    for (String kind : storage.getKinds()) {
+      Instant lastSeen = storage.findNewest(kind, 1, (id, wrapper) -> wrapper.decodeSpanContext(kind).getClosed())
         .stream()
-        .map(SpanContextStoreWrapper::getSpanContext)
-        .toList();
+        .findFirst()
+        .orElse(null);
+      registry.seed(kind, storage.count(kind, SpanQuery.all(), Integer.MAX_VALUE), storage.count(kind, SpanQuery.all().withOnlyFailed(true), Integer.MAX_VALUE), lastSeen);
+    }
+    return registry;
+  }
+
+  private RecentSpans recentSpans(String kind) {
+    RecentSpans spans = recentSpans.get(kind);
+    if (spans != null) {
+      return spans;
+    }
+    Lock lock = writeLocks.get(kind);
+    lock.lock();
+    try {
+      spans = recentSpans.get(kind);
+      if (spans == null) {
+        log.debug("loading recent spans for kind '{}'", kind);
+        spans = new RecentSpans(RECENT_SPANS_CAPACITY);
+        spans.load(findNewest(kind, RECENT_SPANS_CAPACITY));
+        recentSpans.put(kind, spans);
+      }
+      return spans;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private List<StoredSpan> findNewest(String kind, int limit) {
+    return storage().findNewest(kind, limit, mapper(kind));
+  }
+
+  private BiFunction<String, SpanContextStoreWrapper, StoredSpan> mapper(String kind) {
+    return (id, wrapper) -> new StoredSpan(id, labelInterner.intern(wrapper.decodeSpanContext(kind)), wrapper);
+  }
+
+  /**
+   * Returns the configured storage engine. If the engine has been changed, all state which has been read from the
+   * former engine is dropped, so that it is read again from the new one. Spans are not migrated between engines.
+   */
+  private SpanStorage storage() {
+    StorageEngine engine = globalConfigStore.get().getStorageEngine();
+    if (engine != activeEngine) {
+      activate(engine);
+    }
+    return engine == StorageEngine.SEGMENT_LOG ? segmentLogStorage : queryableStorage;
+  }
+
+  private synchronized void activate(StorageEngine engine) {
+    if (engine != activeEngine) {
+      if (activeEngine != null) {
+        log.info("switching span storage engine from {} to {}", activeEngine, engine);
+      }
+      recentSpans.clear();
+      coalescers.clear();
+      resultCache.invalidateAll();
+      kindRegistry = null;
+      activeEngine = engine;
+    }
+  }
+
+  void add(SpanContext spanContext) {
+    addAll(spanContext.getKind(), List.of(spanContext));
+  }
+
+  /**
+   * Writes the spans of the kind and returns them as they have been stored, with their ids, in the order of the given
+   * span contexts.
+   */
+  List<StoredSpan> addAll(String kind, Collection<SpanContext> spanContexts) {
+    log.debug("add {} spans to store for kind '{}'", spanContexts.size(), kind);
+    Duration coalescingWindow = Duration.ofSeconds(globalConfigStore.get().getCoalescingWindowSeconds());
+    List<SpanContext> internedSpanContexts = internLabels(spanContexts);
+    SpanStorage storage = storage();
+    KindRegistry registry = kindRegistry();
+    Lock lock = lockForWrite(kind);
+    try {
+      SpanCoalescer coalescer = coalescer(kind);
+      List<StoredSpan> written = new ArrayList<>(spanContexts.size());
+      storage.write(kind, writer -> {
+        for (SpanContext spanContext : internedSpanContexts) {
+          if (coalescingWindow.isZero()) {
+            SpanContextStoreWrapper wrapper = new SpanContextStoreWrapper(spanContext);
+            written.add(new StoredSpan(writer.insert(wrapper), spanContext, wrapper));
+          } else {
+            written.add(coalescer.write(writer, spanContext, coalescingWindow));
+          }
+        }
+      });
+      coalescer.commit();
+      recordWrite(registry, kind, written);
+      RecentSpans spans = recentSpans.get(kind);
+      if (spans != null) {
+        spans.addAll(written, coalescer::isReplaced);
+      }
+      resultCache.invalidate(kind);
+      return written;
+    } catch (RuntimeException e) {
+      coalescer(kind).clear();
+      throw e;
+    } finally {
+      lock.unlock();
     }
   }
 
-  synchronized void add(SpanContext spanContext) {
-    log.debug("add span to store for kind '{}'", spanContext.getKind());
-    try (QueryableMutableStore<SpanContextStoreWrapper> store = storeFactory.getMutable(spanContext.getKind())) {
-      store.put(new SpanContextStoreWrapper(spanContext));
+  /**
+   * Coalesced spans update their entry and have a count above one, so only spans with a count of one are new entries.
+   */
+  private static void recordWrite(KindRegistry registry, String kind, List<StoredSpan> written) {
+    List<StoredSpan> newEntries = written.stream().filter(span -> span.getCount() == 1).toList();
+    written.stream()
+      .map(StoredSpan::getClosed)
+      .max(Comparator.naturalOrder())
+      .ifPresent(closed -> registry.recordWrite(kind, newEntries.size(), newEntries.stream().filter(StoredSpan::isFailed).count(), closed));
+  }
+
+  private List<SpanContext> internLabels(Collection<SpanContext> spanContexts) {
+    return spanContexts.stream().map(labelInterner::intern).toList();
+  }
+
+  private SpanCoalescer coalescer(String kind) {
+    return coalescers.computeIfAbsent(kind, k -> new SpanCoalescer());
+  }
+
+  /**
+   * Writes are serialized per kind only, so that writers for different kinds do not wait for each other. The time a
+   * writer has to wait for its kind is recorded as contention in the {@link TraceMonitorStatistics}.
+   */
+  private Lock lockForWrite(String kind) {
+    Lock lock = writeLocks.get(kind);
+    if (!lock.tryLock()) {
+      long start = System.nanoTime();
+      lock.lock();
+      statistics.kind(kind).recordWriteLockWait(System.nanoTime() - start);
     }
+    return lock;
   }
 }
@@ -14,20 +14,18 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
-package com.cloudogu.scm.tracemonitor;
+package com.cloudogu.scm.tracemonitor.config;
 
-import org.mapstruct.AfterMapping;
-import org.mapstruct.Mapper;
-import org.mapstruct.MappingTarget;
-import sonia.scm.trace.SpanContext;
-
-@Mapper
-public interface SpanContextMapper {
-
-  SpanContextDto map(SpanContext context);
-
-  @AfterMapping
-  default void addDuration(@MappingTarget SpanContextDto dto, SpanContext context) {
-    dto.setDurationInMillis(context.duration().toMillis());
-  }
+/**
+ * Decides which spans are captured by the trace monitor.
+ */
+public enum CaptureMode {
+  /**
+   * Captures all spans, reduced by the configured sampling rates.
+   */
+  ALL,
+  /**
+   * Captures failed spans and spans, which are slower than the configured percentile of their kind.
+   */
+  SLOW_AND_FAILED
 }
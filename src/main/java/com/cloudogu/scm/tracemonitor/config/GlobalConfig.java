@@ -23,6 +23,8 @@ import lombok.NoArgsConstructor;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import java.util.HashMap;
+import java.util.Map;
 
 @Data
 @AllArgsConstructor
@@ -32,4 +34,26 @@ import jakarta.xml.bind.annotation.XmlRootElement;
 public class GlobalConfig {
   private int storeSize = 100;
   private String cleanupExpression = "0 0 2 * * ?"; // Every day at 2:00 AM
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+  private double samplingRate = 1.0;
+  private Map<String, Double> kindSamplingRates = new HashMap<>();
+  private CaptureMode captureMode = CaptureMode.ALL;
+  private double slowSpanPercentile = 95.0;
+  private int coalescingWindowSeconds = 0;
+  private StorageEngine storageEngine = StorageEngine.QUERYABLE_STORE;
+
+  public GlobalConfig(int storeSize, String cleanupExpression) {
+    this.storeSize = storeSize;
+    this.cleanupExpression = cleanupExpression;
+  }
+
+  /**
+   * Returns the rate of successful spans of the given kind, which should be stored.
+   */
+  public double getSamplingRate(String kind) {
+    if (kindSamplingRates != null && kindSamplingRates.containsKey(kind)) {
+      return kindSamplingRates.get(kind);
+    }
+    return samplingRate;
+  }
 }
@@ -23,7 +23,11 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
+import java.util.HashMap;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -36,6 +40,30 @@ public class GlobalConfigDto extends HalRepresentation {
 
   private String cleanupExpression;
 
+  private OverflowPolicy overflowPolicy;
+
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private double samplingRate = 1.0;
+
+  private Map<String, @DecimalMin("0.0") @DecimalMax("1.0") Double> kindSamplingRates = new HashMap<>();
+
+  private CaptureMode captureMode;
+
+  @DecimalMin("50.0")
+  @DecimalMax("99.9")
+  private double slowSpanPercentile = 95.0;
+
+  @Min(0)
+  private int coalescingWindowSeconds;
+
+  private StorageEngine storageEngine;
+
+  public GlobalConfigDto(int storeSize, String cleanupExpression) {
+    this.storeSize = storeSize;
+    this.cleanupExpression = cleanupExpression;
+  }
+
   @Override
   @SuppressWarnings("squid:S1185") // We want to have this method available in this package
   protected HalRepresentation add(Links links) {
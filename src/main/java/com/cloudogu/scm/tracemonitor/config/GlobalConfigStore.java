@@ -21,23 +21,34 @@ import sonia.scm.store.ConfigurationStore;
 import sonia.scm.store.ConfigurationStoreFactory;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
 import jakarta.validation.constraints.NotNull;
 
+/**
+ * The configuration is read for every exported span, so it is cached after it has been read once.
+ */
+@Singleton
 public class GlobalConfigStore {
 
   private static final String STORE_NAME = "trace-monitor-config";
 
   private final ConfigurationStoreFactory storeFactory;
 
+  private volatile GlobalConfig cachedConfig;
+
   @Inject
   public GlobalConfigStore(ConfigurationStoreFactory storeFactory) {
     this.storeFactory = storeFactory;
   }
 
   public GlobalConfig get() {
-    GlobalConfig globalConfig = createStore().get();
+    GlobalConfig globalConfig = cachedConfig;
     if (globalConfig == null) {
-      globalConfig = new GlobalConfig();
+      globalConfig = createStore().get();
+      if (globalConfig == null) {
+        globalConfig = new GlobalConfig();
+      }
+      cachedConfig = globalConfig;
     }
     return globalConfig;
   }
@@ -45,6 +56,7 @@ public class GlobalConfigStore {
   public void update(@NotNull GlobalConfig config) {
     ConfigurationPermissions.write("traceMonitor").check();
     createStore().set(config);
+    cachedConfig = config;
   }
 
   private ConfigurationStore<GlobalConfig> createStore() {
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor.config;
+
+/**
+ * Decides what happens to a span, if the ingestion queue of its kind is full.
+ */
+public enum OverflowPolicy {
+  /**
+   * Waits a short time for free space and drops the new span, if there is still none.
+   */
+  BLOCK,
+  /**
+   * Drops the oldest queued span to make room for the new one.
+   */
+  DROP_OLDEST,
+  /**
+   * Drops the new span.
+   */
+  DROP_NEWEST,
+  /**
+   * Drops new successful spans and makes room for new failed spans by dropping queued successful ones.
+   */
+  DROP_SUCCESSFUL
+}
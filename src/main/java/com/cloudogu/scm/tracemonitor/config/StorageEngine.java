@@ -14,26 +14,19 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
-package com.cloudogu.scm.tracemonitor;
+package com.cloudogu.scm.tracemonitor.config;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
-
-import java.time.Instant;
-import java.util.Map;
-
-@AllArgsConstructor
-@NoArgsConstructor
-@Getter
-@Setter
-@SuppressWarnings("java:S2160") // we do not need equals and hashcode for dto`s
-public class SpanContextDto {
-  private String kind;
-  private Map<String, String> labels;
-  private Instant opened;
-  private Instant closed;
-  private long durationInMillis;
-  private boolean failed;
+/**
+ * Storage engine, which persists the spans of the trace monitor.
+ */
+public enum StorageEngine {
+  /**
+   * Stores spans in the queryable store of scm-manager.
+   */
+  QUERYABLE_STORE,
+  /**
+   * Appends spans to memory mapped segment files per kind and drops whole segments for retention. Suited for large
+   * store sizes.
+   */
+  SEGMENT_LOG
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor.update;
+
+import com.cloudogu.scm.tracemonitor.SpanContextStoreWrapper;
+import com.cloudogu.scm.tracemonitor.SpanContextStoreWrapperQueryFields;
+import com.cloudogu.scm.tracemonitor.SpanContextStoreWrapperStoreFactory;
+import jakarta.inject.Inject;
+import sonia.scm.migration.UpdateStep;
+import sonia.scm.plugin.Extension;
+import sonia.scm.store.QueryableStore;
+import sonia.scm.version.Version;
+
+import java.util.List;
+
+/**
+ * Rewrites spans stored with their plain span context, so that they are encoded and have the fields set, which are
+ * used to filter spans in queries.
+ */
+@Extension
+class TraceMonitorSpanQueryFieldsUpdateStep implements UpdateStep {
+
+  private final SpanContextStoreWrapperStoreFactory queryableStoreFactory;
+
+  @Inject
+  TraceMonitorSpanQueryFieldsUpdateStep(SpanContextStoreWrapperStoreFactory queryableStoreFactory) {
+    this.queryableStoreFactory = queryableStoreFactory;
+  }
+
+  @Override
+  public void doUpdate() {
+    readKinds().forEach(kind -> {
+      try (var dataStore = queryableStoreFactory.getMutable(kind)) {
+        dataStore.transactional(() -> {
+          dataStore.getAll().forEach((id, wrapper) -> {
+            if (wrapper.getSpanContext() != null) {
+              dataStore.put(id, new SpanContextStoreWrapper(wrapper.getSpanContext()));
+            }
+          });
+          return true;
+        });
+      }
+    });
+  }
+
+  private List<String> readKinds() {
+    try (QueryableStore<SpanContextStoreWrapper> store = queryableStoreFactory.getOverall()) {
+      return store
+        .query()
+        .project(SpanContextStoreWrapperQueryFields.SPANCONTEXTKIND_ID)
+        .distinct()
+        .findAll()
+        .stream()
+        .map(row -> row[0].toString())
+        .toList();
+    }
+  }
+
+  @Override
+  public Version getTargetVersion() {
+    return Version.parse("3.2.1");
+  }
+
+  @Override
+  public String getAffectedDataType() {
+    return "sonia.scm.plugin.tracemonitor";
+  }
+}
@@ -16,54 +16,86 @@
 
 import React, { FC } from "react";
 import { Span } from "./TraceMonitor";
-import { Modal, Icon } from "@scm-manager/ui-components";
+import { ErrorNotification, Icon, Loading, Modal } from "@scm-manager/ui-components";
 import { useTranslation } from "react-i18next";
-import { convertMillisToString, formatAsTimestamp } from "./time";
+import { convertMillisToString, formatAsTimestamp, formatDateAsTimestamp } from "./time";
+import { SpanReference, useSpanDetails } from "./useTraceMonitor";
 
 type Props = {
   active: boolean;
   onClose: () => void;
-  modalData?: Span;
+  modalData?: Span | SpanReference;
 };
 
 const SpanDetailsModal: FC<Props> = ({ onClose, modalData, active }) => {
   const [t] = useTranslation("plugins");
-  const body = modalData ? (
-    <table className="table">
-      <tbody>
-        <tr>
-          <th>{t("scm-trace-monitor-plugin.table.column.status")}</th>
-          <td>
-            {modalData.failed ? (
-              <>
-                <Icon color="danger" name="exclamation-triangle" />
-                {" " + t("scm-trace-monitor-plugin.table.failed")}
-              </>
-            ) : (
-              <>
-                <Icon color="success" name="check-circle" iconStyle="far" />
-                {" " + t("scm-trace-monitor-plugin.table.success")}
-              </>
-            )}
-          </td>
-        </tr>
-        <tr>
-          <th>{t("scm-trace-monitor-plugin.table.column.timestamp")}</th>
-          <td>{formatAsTimestamp(modalData)}</td>
-        </tr>
-        <tr>
-          <th>{t("scm-trace-monitor-plugin.table.column.duration")}</th>
-          <td>{convertMillisToString(modalData.durationInMillis)}</td>
-        </tr>
-        {Object.entries(modalData.labels).map(entry => (
+  const { data: span, error, isLoading } = useSpanDetails(modalData);
+
+  let body;
+  if (error) {
+    body = <ErrorNotification error={error} />;
+  } else if (isLoading || !span) {
+    body = <Loading />;
+  } else {
+    body = (
+      <table className="table">
+        <tbody>
+          <tr>
+            <th>{t("scm-trace-monitor-plugin.table.column.status")}</th>
+            <td>
+              {span.failed ? (
+                <>
+                  <Icon color="danger" name="exclamation-triangle" />
+                  {" " + t("scm-trace-monitor-plugin.table.failed")}
+                </>
+              ) : (
+                <>
+                  <Icon color="success" name="check-circle" iconStyle="far" />
+                  {" " + t("scm-trace-monitor-plugin.table.success")}
+                </>
+              )}
+            </td>
+          </tr>
+          <tr>
+            <th>{t("scm-trace-monitor-plugin.table.column.timestamp")}</th>
+            <td>{formatAsTimestamp(span)}</td>
+          </tr>
           <tr>
-            <th>{entry[0].charAt(0).toUpperCase() + entry[0].slice(1)}</th>
-            <td>{entry[1]}</td>
+            <th>{t("scm-trace-monitor-plugin.table.column.duration")}</th>
+            <td>{convertMillisToString(span.durationInMillis)}</td>
           </tr>
-        ))}
-      </tbody>
-    </table>
-  ) : null;
+          {span.count > 1 ? (
+            <>
+              <tr>
+                <th>{t("scm-trace-monitor-plugin.table.column.count")}</th>
+                <td>{span.count}</td>
+              </tr>
+              <tr>
+                <th>{t("scm-trace-monitor-plugin.modal.firstClosed")}</th>
+                <td>{formatDateAsTimestamp(span.firstClosed)}</td>
+              </tr>
+              <tr>
+                <th>{t("scm-trace-monitor-plugin.modal.durations")}</th>
+                <td>
+                  {t("scm-trace-monitor-plugin.modal.durationsValue", {
+                    min: convertMillisToString(span.minDurationInMillis),
+                    average: convertMillisToString(span.averageDurationInMillis),
+                    max: convertMillisToString(span.maxDurationInMillis)
+                  })}
+                </td>
+              </tr>
+            </>
+          ) : null}
+          {Object.entries(span.labels).map(entry => (
+            <tr>
+              <th>{entry[0].charAt(0).toUpperCase() + entry[0].slice(1)}</th>
+              <td>{entry[1]}</td>
+            </tr>
+          ))}
+        </tbody>
+      </table>
+    );
+  }
 
   return (
     <Modal closeFunction={onClose} title={t("scm-trace-monitor-plugin.modal.title")} body={body} active={active} />
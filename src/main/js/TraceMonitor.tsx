@@ -14,14 +14,15 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
-import React, { FC, useEffect, useRef, useState } from "react";
+import React, { FC, useEffect, useMemo, useRef, useState } from "react";
 import { useTranslation } from "react-i18next";
-import { Redirect, useRouteMatch } from "react-router-dom";
+import { Redirect, useHistory, useLocation, useRouteMatch } from "react-router-dom";
 import { Links } from "@scm-manager/ui-types";
 import { ErrorNotification, LinkPaginator, Loading, Subtitle, Title, urls } from "@scm-manager/ui-components";
 import TraceMonitorTable from "./TraceMonitorTable";
-import { useTraceMonitor, useTraceMonitorKinds } from "./useTraceMonitor";
+import { SpanReference, useLiveSpans, useTraceMonitor, useTraceMonitorKinds } from "./useTraceMonitor";
 import TraceMonitorTableActions from "./TraceMonitorTableActions";
+import SpanDetailsModal from "./SpanDetailsModal";
 import { useDocumentTitle } from "@scm-manager/ui-core";
 
 const usePrevious = <T,>(value: T) => {
@@ -40,6 +41,15 @@ const TraceMonitor: FC<{ links: Links }> = () => {
   const match = useRouteMatch();
   const page = urls.getPageFromMatch(match);
 
+  const location = useLocation();
+  const history = useHistory();
+  const linkedSpan = useMemo<SpanReference | undefined>(() => {
+    const params = new URLSearchParams(location.search);
+    const kind = params.get("kind");
+    const id = params.get("span");
+    return kind && id ? { kind, id } : undefined;
+  }, [location.search]);
+
   const [kindFilter, setKindFilter] = useState("ALL");
   const previousKindFilter = usePrevious(kindFilter);
 
@@ -49,9 +59,26 @@ const TraceMonitor: FC<{ links: Links }> = () => {
   const [queryLabelFilter, setQueryLabelFilter] = useState("");
   const previousLabelFilter = usePrevious(queryLabelFilter);
 
+  const [fromFilter, setFromFilter] = useState("");
+  const previousFromFilter = usePrevious(fromFilter);
+
+  const [toFilter, setToFilter] = useState("");
+  const previousToFilter = usePrevious(toFilter);
+
+  const [live, setLive] = useState(false);
+
   const [redirectToFirstPage, setRedirectToFirstPage] = useState(false);
 
-  const { data, error, isLoading } = useTraceMonitor(page, kindFilter, onlyFailedFilter, queryLabelFilter);
+  const { data, error, isLoading } = useTraceMonitor(
+    page,
+    kindFilter,
+    onlyFailedFilter,
+    queryLabelFilter,
+    fromFilter,
+    toFilter,
+    live
+  );
+  const liveSpans = useLiveSpans(live, kindFilter, onlyFailedFilter, queryLabelFilter);
   const { data: kinds, error: kindsError, isLoading: kindsLoading } = useTraceMonitorKinds();
 
   const getDocumentTitle = () => {
@@ -81,6 +108,12 @@ const TraceMonitor: FC<{ links: Links }> = () => {
     }
   }, [onlyFailedFilter, previousOnlyFailedFilter]);
 
+  useEffect(() => {
+    if (fromFilter !== previousFromFilter || toFilter !== previousToFilter) {
+      setRedirectToFirstPage(true);
+    }
+  }, [fromFilter, previousFromFilter, toFilter, previousToFilter]);
+
   useEffect(() => {
     if (redirectToFirstPage) {
       setRedirectToFirstPage(false);
@@ -95,7 +128,7 @@ const TraceMonitor: FC<{ links: Links }> = () => {
     return <ErrorNotification error={error} />;
   }
 
-  if (isLoading || kindsLoading || !data || !kinds) {
+  if ((!live && (isLoading || !data)) || kindsLoading || !kinds) {
     return <Loading />;
   }
 
@@ -103,6 +136,9 @@ const TraceMonitor: FC<{ links: Links }> = () => {
     <>
       <Title title={t("scm-trace-monitor-plugin.title")} />
       <Subtitle subtitle={t("scm-trace-monitor-plugin.subtitle")} />
+      {linkedSpan && (
+        <SpanDetailsModal modalData={linkedSpan} active={true} onClose={() => history.replace(location.pathname)} />
+      )}
       <TraceMonitorTableActions
         key="actions"
         kindFilter={kindFilter}
@@ -112,10 +148,22 @@ const TraceMonitor: FC<{ links: Links }> = () => {
         kinds={kinds.kinds}
         labelFilter={queryLabelFilter}
         setLabelFilter={setQueryLabelFilter}
+        fromFilter={fromFilter}
+        setFromFilter={setFromFilter}
+        toFilter={toFilter}
+        setToFilter={setToFilter}
+        live={live}
+        setLive={setLive}
       />
-      <TraceMonitorTable spans={data.spans} />
-      <hr />
-      <LinkPaginator collection={data} page={page} />
+      {live || !data ? (
+        <TraceMonitorTable spans={liveSpans} />
+      ) : (
+        <>
+          <TraceMonitorTable spans={data.spans} />
+          <hr />
+          <LinkPaginator collection={data} page={page} />
+        </>
+      )}
     </>
   );
 };
@@ -82,6 +82,14 @@ const TraceMonitorTable: FC<Props> = ({ spans }) => {
           >
             {row => convertMillisToString(row.durationInMillis)}
           </Column>
+          <Column
+            header={t("scm-trace-monitor-plugin.table.column.count")}
+            createComparator={() => comparators.byKey("count")}
+            ascendingIcon="sort"
+            descendingIcon="sort"
+          >
+            {row => row.count}
+          </Column>
           <Column header="">
             {row => (
               <NoStyleButton className={"has-text-info is-hovered"} onClick={() => openModal(row)}>
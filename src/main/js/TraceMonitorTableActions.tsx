@@ -14,7 +14,7 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
-import { Checkbox, devices, FilterInput, Help, Select, SelectItem } from "@scm-manager/ui-components";
+import { Checkbox, devices, FilterInput, Help, InputField, Select, SelectItem } from "@scm-manager/ui-components";
 import React, { FC } from "react";
 import styled from "styled-components";
 import { useTranslation } from "react-i18next";
@@ -27,6 +27,12 @@ type Props = {
   changeStatusFilter: (status: boolean) => void;
   labelFilter: string;
   setLabelFilter: (searchFilter: string) => void;
+  fromFilter: string;
+  setFromFilter: (from: string) => void;
+  toFilter: string;
+  setToFilter: (to: string) => void;
+  live: boolean;
+  setLive: (live: boolean) => void;
 };
 
 const Level = styled.div`
@@ -69,7 +75,13 @@ const TraceMonitorTableActions: FC<Props> = ({
   statusFilter,
   changeStatusFilter,
   labelFilter,
-  setLabelFilter
+  setLabelFilter,
+  fromFilter,
+  setFromFilter,
+  toFilter,
+  setToFilter,
+  live,
+  setLive
 }) => {
   const [t] = useTranslation("plugins");
 
@@ -91,6 +103,29 @@ const TraceMonitorTableActions: FC<Props> = ({
           <FilterInput value={labelFilter} filter={setLabelFilter} placeholder="" autoFocus />
         </Level>
       </div>
+      <FlexNoneColumn className="column is-centered is-flex">
+        <Level>
+          <span className="mr-2">
+            {t("scm-trace-monitor-plugin.tableActions.timeRangeFilter")}
+            <Help message={t("scm-trace-monitor-plugin.tableActions.timeRangeFilterHelp")} />
+          </span>
+          <InputField
+            type="datetime-local"
+            value={fromFilter}
+            onChange={setFromFilter}
+            disabled={live}
+            aria-label={t("scm-trace-monitor-plugin.tableActions.fromFilter")}
+          />
+          <span className="mx-2">–</span>
+          <InputField
+            type="datetime-local"
+            value={toFilter}
+            onChange={setToFilter}
+            disabled={live}
+            aria-label={t("scm-trace-monitor-plugin.tableActions.toFilter")}
+          />
+        </Level>
+      </FlexNoneColumn>
       <FlexNoneColumn className="column is-centered is-flex">
         <Level>
           <span className="mr-2">{t("scm-trace-monitor-plugin.tableActions.kindFilter")}</span>
@@ -104,6 +139,14 @@ const TraceMonitorTableActions: FC<Props> = ({
           onChange={changeStatusFilter}
         />
       </FlexColumn>
+      <FlexColumn className="column is-flex is-flex-grow-0">
+        <Checkbox
+          checked={live}
+          label={t("scm-trace-monitor-plugin.tableActions.live")}
+          helpText={t("scm-trace-monitor-plugin.tableActions.liveHelp")}
+          onChange={setLive}
+        />
+      </FlexColumn>
     </TableActions>
   );
 };
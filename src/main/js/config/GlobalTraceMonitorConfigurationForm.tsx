@@ -15,12 +15,31 @@
  */
 
 import React, { FC, useEffect, useState } from "react";
-import { Configuration, InputField } from "@scm-manager/ui-components";
+import { Configuration, InputField, Select } from "@scm-manager/ui-components";
 import { useTranslation } from "react-i18next";
 
+type OverflowPolicy = "BLOCK" | "DROP_OLDEST" | "DROP_NEWEST" | "DROP_SUCCESSFUL";
+
+const OVERFLOW_POLICIES: OverflowPolicy[] = ["DROP_OLDEST", "DROP_NEWEST", "DROP_SUCCESSFUL", "BLOCK"];
+
+type CaptureMode = "ALL" | "SLOW_AND_FAILED";
+
+const CAPTURE_MODES: CaptureMode[] = ["ALL", "SLOW_AND_FAILED"];
+
+type StorageEngine = "QUERYABLE_STORE" | "SEGMENT_LOG";
+
+const STORAGE_ENGINES: StorageEngine[] = ["QUERYABLE_STORE", "SEGMENT_LOG"];
+
 export type Configuration = {
   storeSize: number;
   cleanupExpression: string;
+  overflowPolicy: OverflowPolicy;
+  samplingRate: number;
+  kindSamplingRates: { [kind: string]: number };
+  captureMode: CaptureMode;
+  slowSpanPercentile: number;
+  coalescingWindowSeconds: number;
+  storageEngine: StorageEngine;
 };
 
 type Props = {
@@ -33,16 +52,57 @@ const GlobalTraceMonitorConfigurationForm: FC<Props> = ({ initialConfiguration,
   const [t] = useTranslation("plugins");
   const [storeSize, setStoreSize] = useState<number>(initialConfiguration.storeSize);
   const [cleanupExpression, setCleanupExpression] = useState<string>(initialConfiguration.cleanupExpression);
+  const [overflowPolicy, setOverflowPolicy] = useState<OverflowPolicy>(initialConfiguration.overflowPolicy);
+  const [samplingRate, setSamplingRate] = useState<number>(initialConfiguration.samplingRate);
+  const [captureMode, setCaptureMode] = useState<CaptureMode>(initialConfiguration.captureMode);
+  const [slowSpanPercentile, setSlowSpanPercentile] = useState<number>(initialConfiguration.slowSpanPercentile);
+  const [coalescingWindowSeconds, setCoalescingWindowSeconds] = useState<number>(
+    initialConfiguration.coalescingWindowSeconds
+  );
+  const [storageEngine, setStorageEngine] = useState<StorageEngine>(initialConfiguration.storageEngine);
 
   useEffect(() => {
-    onConfigurationChange({ storeSize, cleanupExpression }, isValidConfig());
-  }, [storeSize, cleanupExpression]);
+    onConfigurationChange(
+      {
+        storeSize,
+        cleanupExpression,
+        overflowPolicy,
+        samplingRate,
+        kindSamplingRates: initialConfiguration.kindSamplingRates,
+        captureMode,
+        slowSpanPercentile,
+        coalescingWindowSeconds,
+        storageEngine
+      },
+      isValidConfig()
+    );
+  }, [
+    storeSize,
+    cleanupExpression,
+    overflowPolicy,
+    samplingRate,
+    captureMode,
+    slowSpanPercentile,
+    coalescingWindowSeconds,
+    storageEngine
+  ]);
 
   const isValidConfig = () => {
     return (
       (storeSize !== initialConfiguration.storeSize ||
-      cleanupExpression !== initialConfiguration.cleanupExpression) &&
+      cleanupExpression !== initialConfiguration.cleanupExpression ||
+      overflowPolicy !== initialConfiguration.overflowPolicy ||
+      samplingRate !== initialConfiguration.samplingRate ||
+      captureMode !== initialConfiguration.captureMode ||
+      slowSpanPercentile !== initialConfiguration.slowSpanPercentile ||
+      coalescingWindowSeconds !== initialConfiguration.coalescingWindowSeconds ||
+      storageEngine !== initialConfiguration.storageEngine) &&
       storeSize > 0 &&
+      samplingRate >= 0 &&
+      samplingRate <= 1 &&
+      slowSpanPercentile >= 50 &&
+      slowSpanPercentile <= 99.9 &&
+      coalescingWindowSeconds >= 0 &&
       cleanupExpression.length > 0
     );
   };
@@ -64,6 +124,65 @@ const GlobalTraceMonitorConfigurationForm: FC<Props> = ({ initialConfiguration,
         disabled={readOnly}
         helpText={t("scm-trace-monitor-plugin.config.form.cleanupExpressionHelpText")}
       />
+      <Select
+        label={t("scm-trace-monitor-plugin.config.form.overflowPolicy")}
+        onChange={(policy) => setOverflowPolicy(policy as OverflowPolicy)}
+        value={overflowPolicy}
+        options={OVERFLOW_POLICIES.map((policy) => ({
+          label: t(`scm-trace-monitor-plugin.config.form.overflowPolicies.${policy}`),
+          value: policy
+        }))}
+        disabled={readOnly}
+        helpText={t("scm-trace-monitor-plugin.config.form.overflowPolicyHelpText")}
+      />
+      <InputField
+        label={t("scm-trace-monitor-plugin.config.form.samplingRate")}
+        onChange={(rate) => setSamplingRate(parseFloat(rate))}
+        type="number"
+        value={samplingRate.toString()}
+        disabled={readOnly}
+        helpText={t("scm-trace-monitor-plugin.config.form.samplingRateHelpText")}
+      />
+      <Select
+        label={t("scm-trace-monitor-plugin.config.form.captureMode")}
+        onChange={(mode) => setCaptureMode(mode as CaptureMode)}
+        value={captureMode}
+        options={CAPTURE_MODES.map((mode) => ({
+          label: t(`scm-trace-monitor-plugin.config.form.captureModes.${mode}`),
+          value: mode
+        }))}
+        disabled={readOnly}
+        helpText={t("scm-trace-monitor-plugin.config.form.captureModeHelpText")}
+      />
+      {captureMode === "SLOW_AND_FAILED" ? (
+        <InputField
+          label={t("scm-trace-monitor-plugin.config.form.slowSpanPercentile")}
+          onChange={(percentile) => setSlowSpanPercentile(parseFloat(percentile))}
+          type="number"
+          value={slowSpanPercentile.toString()}
+          disabled={readOnly}
+          helpText={t("scm-trace-monitor-plugin.config.form.slowSpanPercentileHelpText")}
+        />
+      ) : null}
+      <InputField
+        label={t("scm-trace-monitor-plugin.config.form.coalescingWindowSeconds")}
+        onChange={(seconds) => setCoalescingWindowSeconds(parseInt(seconds))}
+        type="number"
+        value={coalescingWindowSeconds.toString()}
+        disabled={readOnly}
+        helpText={t("scm-trace-monitor-plugin.config.form.coalescingWindowSecondsHelpText")}
+      />
+      <Select
+        label={t("scm-trace-monitor-plugin.config.form.storageEngine")}
+        onChange={(engine) => setStorageEngine(engine as StorageEngine)}
+        value={storageEngine}
+        options={STORAGE_ENGINES.map((engine) => ({
+          label: t(`scm-trace-monitor-plugin.config.form.storageEngines.${engine}`),
+          value: engine
+        }))}
+        disabled={readOnly}
+        helpText={t("scm-trace-monitor-plugin.config.form.storageEngineHelpText")}
+      />
     </>
   );
 };
@@ -20,7 +20,11 @@ import { CardColumnSmall, DateFromNow, Icon } from "@scm-manager/ui-components";
 
 const RequestFailedEvent = ({ event }) => {
   const [t] = useTranslation("plugins");
-  const link = `/admin/trace-monitor`;
+  // events of former versions embed the whole span instead of its kind and id
+  const kind = event.kind || event.context?.kind;
+  const link = event.id
+    ? `/admin/trace-monitor/?kind=${encodeURIComponent(kind)}&span=${encodeURIComponent(event.id)}`
+    : `/admin/trace-monitor`;
   const icon = <Icon name="envelope" className="fa-fw fa-lg" color="inherit" />;
 
   return (
@@ -29,9 +33,7 @@ const RequestFailedEvent = ({ event }) => {
       avatar={icon}
       contentLeft={<strong>{t("scm-trace-monitor-plugin.landingpage.requestFailed.header")}</strong>}
       contentRight={<small><DateFromNow date={event.date} /></small>}
-      footer={t("scm-trace-monitor-plugin.landingpage.requestFailed.kind", {
-        ...event.context
-      })}
+      footer={t("scm-trace-monitor-plugin.landingpage.requestFailed.kind", { kind })}
     />
   );
 };
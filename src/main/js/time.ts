@@ -25,6 +25,17 @@ export const convertMillisToString = (ms: number) => {
   return `${minutes} m ${seconds} s ${millis} ms`;
 };
 
+export const formatDateAsTimestamp = (date: Date) => {
+  return format(new Date(date), "yyyy-MM-dd HH:mm:ss");
+};
+
+/**
+ * Converts the local date and time of a datetime-local input into an ISO-8601 timestamp.
+ */
+export const toIsoTimestamp = (localDateTime: string) => {
+  return new Date(localDateTime).toISOString();
+};
+
 export const formatAsTimestamp = (span: Span) => {
-  return format(new Date(span.closed), "yyyy-MM-dd HH:mm:ss");
+  return formatDateAsTimestamp(span.closed);
 };
@@ -14,18 +14,34 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
+import { useEffect, useState } from "react";
 import { apiClient } from "@scm-manager/ui-components";
 import { useQuery } from "react-query";
 import { ApiResult, useRequiredIndexLink } from "@scm-manager/ui-api";
 import { PagedCollection, HalRepresentation } from "@scm-manager/ui-types";
+import { toIsoTimestamp } from "./time";
 
 export type Span = {
+  id?: string;
   kind: string;
   opened: Date;
   closed: Date;
   durationInMillis: number;
   labels: { [key: string]: string };
   failed: boolean;
+  count: number;
+  firstClosed: Date;
+  minDurationInMillis: number;
+  maxDurationInMillis: number;
+  averageDurationInMillis: number;
+};
+
+/**
+ * References a stored span, e.g. from a link of the landing page.
+ */
+export type SpanReference = {
+  kind: string;
+  id: string;
 };
 
 type TraceMonitor = PagedCollection & {
@@ -35,31 +51,110 @@ type TraceMonitor = PagedCollection & {
 
 type TraceMonitorKinds = HalRepresentation & {
   kinds: string[];
+  details: {
+    kind: string;
+    count: number;
+    failedCount: number;
+    lastSeen?: Date;
+  }[];
 };
 
 type TraceMonitorConfig = HalRepresentation & {
   storeSize: number;
 };
 
+/**
+ * The table only shows these fields, the details of a span are read with {@link useSpanDetails}.
+ */
+const TABLE_FIELDS = "id,kind,opened,closed,durationInMillis,failed,count";
+
 export const useTraceMonitor = (
   page: number,
   kindFilter: string,
   onlyFailedFilter: boolean,
-  labelFilter: string
+  labelFilter: string,
+  fromFilter: string,
+  toFilter: string,
+  live = false
 ): ApiResult<TraceMonitor> => {
   const indexLink = useRequiredIndexLink("traceMonitor");
-  return useQuery<TraceMonitor, Error>(["traceMonitor", page, kindFilter, onlyFailedFilter, labelFilter], () => {
-    let link = indexLink + `?page=${page}&labelFilter=${labelFilter}`;
+  return useQuery<TraceMonitor, Error>(
+    ["traceMonitor", page, kindFilter, onlyFailedFilter, labelFilter, fromFilter, toFilter],
+    () => {
+      let link = indexLink + `?page=${page}&labelFilter=${labelFilter}&fields=${TABLE_FIELDS}`;
+      if (kindFilter && kindFilter !== "ALL") {
+        link += `&kind=${kindFilter}`;
+      }
+      if (onlyFailedFilter) {
+        link += "&onlyFailed=true";
+      }
+      if (fromFilter) {
+        link += `&from=${encodeURIComponent(toIsoTimestamp(fromFilter))}`;
+      }
+      if (toFilter) {
+        link += `&to=${encodeURIComponent(toIsoTimestamp(toFilter))}`;
+      }
+      return apiClient.get(link).then(response => response.json());
+    },
+    { enabled: !live }
+  );
+};
+
+/**
+ * Reads all fields of a span of the table by its id. Spans without id, like the ones of the live tail, already carry
+ * all fields.
+ */
+export const useSpanDetails = (span?: Span | SpanReference): ApiResult<Span> => {
+  const indexLink = useRequiredIndexLink("traceMonitor");
+  return useQuery<Span, Error>(
+    ["traceMonitorSpan", span?.kind, span?.id],
+    () => {
+      return apiClient
+        .get(`${indexLink}spans/${encodeURIComponent(span!.kind)}/${encodeURIComponent(span!.id!)}`)
+        .then(response => response.json());
+    },
+    { enabled: !!span?.id, initialData: span?.id ? undefined : (span as Span) }
+  );
+};
+
+const LIVE_SPANS_LIMIT = 100;
+
+/**
+ * Receives newly captured spans as server-sent events while live is enabled. Only the newest spans are kept.
+ */
+export const useLiveSpans = (
+  live: boolean,
+  kindFilter: string,
+  onlyFailedFilter: boolean,
+  labelFilter: string
+): Span[] => {
+  const liveLink = useRequiredIndexLink("traceMonitorLive");
+  const [spans, setSpans] = useState<Span[]>([]);
+
+  useEffect(() => {
+    setSpans([]);
+    if (!live) {
+      return;
+    }
+    let link = liveLink + `?labelFilter=${encodeURIComponent(labelFilter)}`;
     if (kindFilter && kindFilter !== "ALL") {
       link += `&kind=${kindFilter}`;
     }
     if (onlyFailedFilter) {
       link += "&onlyFailed=true";
     }
-    return apiClient.get(link).then(response => response.json());
-  });
-};
+    return apiClient.subscribe(link, {
+      onMessage: {
+        span: (event: MessageEvent) => {
+          const span: Span = JSON.parse(event.data);
+          setSpans(previous => [span, ...previous].slice(0, LIVE_SPANS_LIMIT));
+        }
+      }
+    });
+  }, [live, liveLink, kindFilter, onlyFailedFilter, labelFilter]);
 
+  return spans;
+};
 export const useTraceMonitorKinds = (): ApiResult<TraceMonitorKinds> => {
   const indexLink = useRequiredIndexLink("traceMonitorKinds");
   return useQuery<TraceMonitorKinds, Error>(["traceMonitorKinds"], () => {
@@ -87,5 +87,7 @@ class IndexLinkEnricherTest {
 
     verify(appender).appendLink("traceMonitor", "/scm/v2/trace-monitor/");
     verify(appender).appendLink("traceMonitorKinds", "/scm/v2/trace-monitor/available-kinds");
+    verify(appender).appendLink("traceMonitorLive", "/scm/v2/trace-monitor/live");
+    verify(appender).appendLink("traceMonitorCount", "/scm/v2/trace-monitor/count");
   }
 }
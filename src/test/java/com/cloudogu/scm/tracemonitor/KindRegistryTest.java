@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class KindRegistryTest {
+
+  private final KindRegistry registry = new KindRegistry();
+
+  @Test
+  void shouldAddKindOnFirstWrite() {
+    registry.recordWrite("Jenkins", 2, 1, Instant.ofEpochMilli(200));
+
+    assertThat(registry.contains("Jenkins")).isTrue();
+    assertThat(registry.getSummaries())
+      .containsExactly(new KindRegistry.KindSummary("Jenkins", 2, 1, Instant.ofEpochMilli(200)));
+  }
+
+  @Test
+  void shouldKeepNewestLastSeen() {
+    registry.seed("Jenkins", 10, 2, Instant.ofEpochMilli(500));
+
+    registry.recordWrite("Jenkins", 1, 0, Instant.ofEpochMilli(300));
+
+    assertThat(registry.getSummaries())
+      .containsExactly(new KindRegistry.KindSummary("Jenkins", 11, 2, Instant.ofEpochMilli(500)));
+  }
+
+  @Test
+  void shouldReplaceCountOnRetention() {
+    registry.seed("Jenkins", 10, 5, null);
+    registry.seed("Redmine", 3, 1, null);
+
+    registry.recordRetention("Jenkins", 4, 2);
+    registry.recordRetention("Unknown", 1, 1);
+
+    assertThat(registry.getKinds()).containsExactlyInAnyOrder("Jenkins", "Redmine");
+    assertThat(registry.getSummaries())
+      .extracting(KindRegistry.KindSummary::getCount, KindRegistry.KindSummary::getFailedCount)
+      .containsExactly(tuple(4L, 2L), tuple(3L, 1L));
+  }
+
+  @Test
+  void shouldCountEntriesOfKinds() {
+    registry.seed("Jenkins", 10, 5, null);
+    registry.seed("Redmine", 3, 1, null);
+
+    assertThat(registry.count(List.of("Jenkins", "Redmine", "Unknown"), false)).isEqualTo(13);
+    assertThat(registry.count(List.of("Jenkins", "Redmine"), true)).isEqualTo(6);
+    assertThat(registry.count(List.of("Redmine"), false)).isEqualTo(3);
+  }
+}
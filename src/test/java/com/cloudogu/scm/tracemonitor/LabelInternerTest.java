@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LabelInternerTest {
+
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+  private final LabelInterner interner = new LabelInterner(100, statistics);
+
+  @Test
+  void shouldShareEqualLabels() {
+    SpanContext first = interner.intern(span(new String("https://hitchhiker.org/scm")));
+    SpanContext second = interner.intern(span(new String("https://hitchhiker.org/scm")));
+
+    assertThat(second.getLabels().get("url")).isSameAs(first.getLabels().get("url"));
+    assertThat(second.getLabels().keySet().iterator().next()).isSameAs(first.getLabels().keySet().iterator().next());
+  }
+
+  @Test
+  void shouldKeepSpanValues() {
+    SpanContext spanContext = span("https://hitchhiker.org/scm");
+
+    SpanContext interned = interner.intern(spanContext);
+
+    assertThat(interned.getKind()).isEqualTo(spanContext.getKind());
+    assertThat(interned.getOpened()).isEqualTo(spanContext.getOpened());
+    assertThat(interned.getClosed()).isEqualTo(spanContext.getClosed());
+    assertThat(interned.isFailed()).isEqualTo(spanContext.isFailed());
+    assertThat(interned.getLabels()).containsExactlyEntriesOf(spanContext.getLabels());
+  }
+
+  @Test
+  void shouldKeepNullLabelValues() {
+    Map<String, String> labels = new HashMap<>();
+    labels.put("url", new String("https://hitchhiker.org/scm"));
+    labels.put("status", null);
+    SpanContext spanContext = new SpanContext("Jenkins", labels, Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+
+    SpanContext interned = interner.intern(spanContext);
+
+    assertThat(interned.getLabels())
+      .containsEntry("url", "https://hitchhiker.org/scm")
+      .containsEntry("status", null)
+      .hasSize(2);
+  }
+
+  @Test
+  void shouldMeasureSavedBytes() {
+    for (int i = 0; i < 1_000; i++) {
+      interner.intern(span(new String("https://hitchhiker.org/scm")));
+    }
+
+    assertThat(statistics.getLabelInternMisses()).isEqualTo(2);
+    assertThat(statistics.getLabelInternHits()).isEqualTo(2 * 999);
+    // "url" takes 24 bytes for the string and 24 bytes for its array,
+    // the url of 26 latin-1 characters takes 24 bytes for the string and 48 bytes for its array
+    assertThat(statistics.getLabelInternBytesSaved()).isEqualTo(999L * (24 + 24 + 24 + 48));
+  }
+
+  @Test
+  void shouldEvictStringsBeyondMaximumSize() {
+    String first = interner.intern(new String("0"));
+    for (int i = 1; i < 1_000; i++) {
+      interner.intern(String.valueOf(i));
+    }
+
+    assertThat(interner.intern(new String("0"))).isNotSameAs(first);
+  }
+
+  private SpanContext span(String url) {
+    return new SpanContext("Jenkins", ImmutableMap.of(new String("url"), url), Instant.ofEpochMilli(0), Instant.ofEpochMilli(200), false);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LabelTrigramIndexTest {
+
+  private final LabelTrigramIndex index = new LabelTrigramIndex();
+
+  @Test
+  void shouldFindCandidatesContainingAllTrigrams() {
+    index.add("1", List.of("GET", "hitchhiker.org/jenkins"));
+    index.add("2", List.of("POST", "hitchhiker.org/redmine"));
+    index.add("3", List.of("GET", "hitchhiker.org/jenkins/job/42"));
+
+    assertThat(index.candidates("jenkins")).contains(Set.of("1", "3"));
+    assertThat(index.candidates("hitchhiker")).contains(Set.of("1", "2", "3"));
+    assertThat(index.candidates("job/42")).contains(Set.of("3"));
+    assertThat(index.candidates("gitlab")).contains(Set.of());
+  }
+
+  @Test
+  void shouldNotNarrowDownShortFilters() {
+    index.add("1", List.of("GET"));
+
+    assertThat(index.candidates("GE")).isEmpty();
+  }
+
+  @Test
+  void shouldRemoveSpans() {
+    index.add("1", List.of("hitchhiker.org/jenkins"));
+    index.add("2", List.of("hitchhiker.org/jenkins"));
+
+    index.remove("1", List.of("hitchhiker.org/jenkins"));
+
+    assertThat(index.candidates("jenkins")).contains(Set.of("2"));
+  }
+
+  @Test
+  void shouldRemoveStaleTrigramsOnly() {
+    index.add("1", List.of("hitchhiker.org/jenkins"));
+    index.add("1", List.of("hitchhiker.org/redmine"));
+
+    index.removeStale("1", List.of("hitchhiker.org/jenkins"), List.of("hitchhiker.org/redmine"));
+
+    assertThat(index.candidates("jenkins")).contains(Set.of());
+    assertThat(index.candidates("hitchhiker.org")).contains(Set.of("1"));
+    assertThat(index.candidates("redmine")).contains(Set.of("1"));
+  }
+}
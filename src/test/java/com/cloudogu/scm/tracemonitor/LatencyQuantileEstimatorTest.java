@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyQuantileEstimatorTest {
+
+  @Test
+  void shouldReturnNaNWithoutValues() {
+    LatencyQuantileEstimator estimator = new LatencyQuantileEstimator(0.95);
+
+    assertThat(estimator.estimate()).isNaN();
+  }
+
+  @Test
+  void shouldUseObservedValuesForFewSamples() {
+    LatencyQuantileEstimator estimator = new LatencyQuantileEstimator(0.5);
+    estimator.add(30);
+    estimator.add(10);
+    estimator.add(20);
+
+    assertThat(estimator.estimate()).isEqualTo(20);
+  }
+
+  @Test
+  void shouldEstimateQuantileOfUniformValues() {
+    LatencyQuantileEstimator estimator = new LatencyQuantileEstimator(0.95);
+    for (int i = 1; i <= 1000; i++) {
+      estimator.add(i);
+    }
+
+    assertThat(estimator.estimate()).isCloseTo(950, within(10.0));
+    assertThat(estimator.getCount()).isEqualTo(1000);
+  }
+
+  @Test
+  void shouldEstimateQuantileOfSkewedValues() {
+    LatencyQuantileEstimator estimator = new LatencyQuantileEstimator(0.99);
+    Random random = new Random(42);
+    double[] values = new double[100_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Math.exp(random.nextGaussian()) * 100;
+      estimator.add(values[i]);
+    }
+    Arrays.sort(values);
+    double exact = values[(int) (0.99 * values.length)];
+
+    assertThat(estimator.estimate()).isCloseTo(exact, within(exact * 0.05));
+  }
+
+  @Test
+  void shouldRejectInvalidQuantile() {
+    assertThrows(IllegalArgumentException.class, () -> new LatencyQuantileEstimator(1.0));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LiveTailTest {
+
+  @Mock
+  private ScheduledExecutorService executor;
+  @Mock
+  private SseEventSink sink;
+  @Mock
+  private Sse sse;
+
+  private final List<StoredSpan> sentSpans = new ArrayList<>();
+
+  private LiveTail liveTail;
+
+  @BeforeEach
+  void initLiveTail() {
+    liveTail = new LiveTail(executor);
+    lenient().when(sse.newEventBuilder()).thenAnswer(invocation -> mock(OutboundSseEvent.Builder.class, this::recordSpan));
+    lenient().when(sink.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+  }
+
+  @Test
+  void shouldSendMatchingSpansOnly() {
+    liveTail.subscribe(SpanQuery.all().withKind("Jenkins").withOnlyFailed(true), sink, sse);
+    StoredSpan failedJenkinsSpan = span("Jenkins", 1, true);
+
+    liveTail.publish(failedJenkinsSpan);
+    liveTail.publish(span("Jenkins", 2, false));
+    liveTail.publish(span("Redmine", 3, true));
+    runDrain();
+
+    assertThat(sentSpans).containsExactly(failedJenkinsSpan);
+    verify(sink).send(any());
+  }
+
+  @Test
+  void shouldDropOldestSpansForSlowSubscriber() {
+    liveTail.subscribe(SpanQuery.all(), sink, sse);
+
+    for (int i = 0; i < 150; i++) {
+      liveTail.publish(span("Jenkins", i, false));
+    }
+    runDrain();
+
+    assertThat(sentSpans).hasSize(100);
+    assertThat(sentSpans.get(0).getClosed()).isEqualTo(Instant.ofEpochMilli(50));
+    assertThat(sentSpans.get(99).getClosed()).isEqualTo(Instant.ofEpochMilli(149));
+  }
+
+  @Test
+  void shouldRemoveSubscriberIfSendingFails() {
+    when(sink.send(any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("connection reset")));
+    liveTail.subscribe(SpanQuery.all(), sink, sse);
+
+    liveTail.publish(span("Jenkins", 1, false));
+    runDrain();
+
+    assertThat(liveTail.getSubscriberCount()).isZero();
+    verify(sink).close();
+  }
+
+  @Test
+  void shouldNotDelayOtherSubscribersWhileSendIsPending() {
+    SseEventSink slowSink = mock(SseEventSink.class);
+    CompletableFuture<?> pending = new CompletableFuture<>();
+    doReturn(pending).when(slowSink).send(any());
+    liveTail.subscribe(SpanQuery.all(), slowSink, sse);
+    liveTail.subscribe(SpanQuery.all(), sink, sse);
+
+    liveTail.publish(span("Jenkins", 1, false));
+    liveTail.publish(span("Jenkins", 2, false));
+    runDrains();
+
+    verify(slowSink).send(any());
+    verify(sink, times(2)).send(any());
+
+    pending.complete(null);
+    runDrains();
+
+    verify(slowSink, times(2)).send(any());
+  }
+
+  @Test
+  void shouldRemoveClosedSubscriberOnHeartbeat() {
+    SseEventSink openSink = mock(SseEventSink.class);
+    when(openSink.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+    liveTail.subscribe(SpanQuery.all(), sink, sse);
+    liveTail.subscribe(SpanQuery.all(), openSink, sse);
+    when(sink.isClosed()).thenReturn(true);
+
+    liveTail.heartbeat();
+
+    assertThat(liveTail.getSubscriberCount()).isOne();
+    verify(sink, never()).send(any());
+    verify(openSink).send(any());
+  }
+
+  private void runDrains() {
+    ArgumentCaptor<Runnable> drains = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, atLeastOnce()).execute(drains.capture());
+    clearInvocations(executor);
+    drains.getAllValues().forEach(Runnable::run);
+  }
+
+  private void runDrain() {
+    ArgumentCaptor<Runnable> drain = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).execute(drain.capture());
+    drain.getValue().run();
+  }
+
+  /**
+   * Records spans, which are passed as data of the event as they are, so that they are serialized like all other spans.
+   */
+  private Object recordSpan(InvocationOnMock invocation) throws Throwable {
+    if (invocation.getMethod().getName().equals("data") && invocation.getArgument(0).equals(StoredSpan.class)) {
+      sentSpans.add(invocation.getArgument(1));
+    }
+    return RETURNS_SELF.answer(invocation);
+  }
+
+  private StoredSpan span(String kind, long closed, boolean failed) {
+    SpanContext spanContext = new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(closed), failed);
+    return new StoredSpan(String.valueOf(closed), spanContext, new SpanContextStoreWrapper(spanContext));
+  }
+}
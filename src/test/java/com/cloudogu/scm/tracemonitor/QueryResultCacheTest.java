@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryResultCacheTest {
+
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+  private final QueryResultCache cache = new QueryResultCache(10, statistics);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  void shouldCacheResults() {
+    assertThat(get(SpanQuery.all().withKind("Jenkins"), 1)).isEqualTo(1);
+    assertThat(get(SpanQuery.all().withKind("Jenkins"), 1)).isEqualTo(1);
+    assertThat(get(SpanQuery.all().withKind("Jenkins"), 2)).isEqualTo(2);
+
+    assertThat(statistics.getResultCacheHits()).isEqualTo(1);
+    assertThat(statistics.getResultCacheMisses()).isEqualTo(2);
+    assertThat(statistics.getResultCacheHitRate()).isEqualTo(1.0 / 3);
+  }
+
+  @Test
+  void shouldInvalidateResultsOfKindAndAllKinds() {
+    get(SpanQuery.all().withKind("Jenkins"), 1);
+    get(SpanQuery.all().withKind("Redmine"), 1);
+    get(SpanQuery.all(), 1);
+
+    cache.invalidate("Jenkins");
+
+    get(SpanQuery.all().withKind("Jenkins"), 1);
+    get(SpanQuery.all().withKind("Redmine"), 1);
+    get(SpanQuery.all(), 1);
+    assertThat(loads).hasValue(5);
+  }
+
+  @Test
+  void shouldInvalidateAllResults() {
+    get(SpanQuery.all().withKind("Jenkins"), 1);
+    get(SpanQuery.all(), 1);
+
+    cache.invalidateAll();
+
+    get(SpanQuery.all().withKind("Jenkins"), 1);
+    get(SpanQuery.all(), 1);
+    assertThat(loads).hasValue(4);
+  }
+
+  @Test
+  void shouldNotKeepGenerationsOfUnchangedKinds() {
+    get(SpanQuery.all().withKind("Unknown"), 1);
+    assertThat(cache.generation(SpanQuery.all().withKind("Unknown"))).isZero();
+    assertThat(cache.getKindCount()).isZero();
+
+    cache.invalidate("Jenkins");
+
+    assertThat(cache.generation(SpanQuery.all().withKind("Jenkins"))).isOne();
+    assertThat(cache.getKindCount()).isOne();
+  }
+
+  private int get(SpanQuery query, int page) {
+    return cache.get("find", query, List.of(page), () -> {
+      loads.incrementAndGet();
+      return page;
+    });
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentSpansTest {
+
+  private final RecentSpans recentSpans = new RecentSpans(3);
+
+  @Test
+  void shouldReturnNewestFirst() {
+    recentSpans.addAll(List.of(span("1", 100), span("2", 200)));
+    recentSpans.addAll(List.of(span("3", 300)));
+
+    assertThat(recentSpans.getNewest(10))
+      .extracting(StoredSpan::getId)
+      .containsExactly("3", "2", "1");
+  }
+
+  @Test
+  void shouldLimitToCapacity() {
+    recentSpans.addAll(List.of(span("1", 100), span("2", 200), span("3", 300), span("4", 400)));
+
+    assertThat(recentSpans.getNewest(10))
+      .extracting(StoredSpan::getId)
+      .containsExactly("4", "3", "2");
+  }
+
+  @Test
+  void shouldLimitResult() {
+    recentSpans.addAll(List.of(span("1", 100), span("2", 200), span("3", 300)));
+
+    assertThat(recentSpans.getNewest(2))
+      .extracting(StoredSpan::getId)
+      .containsExactly("3", "2");
+  }
+
+  @Test
+  void shouldReplaceUpdatedSpans() {
+    recentSpans.addAll(List.of(span("1", 100), span("2", 200)));
+    recentSpans.addAll(List.of(span("1", 300)));
+
+    assertThat(recentSpans.getNewest(10))
+      .extracting(StoredSpan::getId)
+      .containsExactly("1", "2");
+    assertThat(recentSpans.getNewest(1).get(0).getClosed()).isEqualTo(Instant.ofEpochMilli(300));
+  }
+
+  @Test
+  void shouldDropSpansWithReplacedIds() {
+    recentSpans.addAll(List.of(span("1", 100), span("2", 200)));
+    recentSpans.addAll(List.of(span("3", 300), span("4", 400)), id -> id.equals("1") || id.equals("3"));
+
+    assertThat(recentSpans.getNewest(10))
+      .extracting(StoredSpan::getId)
+      .containsExactly("4", "2");
+  }
+
+  @Test
+  void shouldLoadSpans() {
+    recentSpans.load(List.of(span("4", 400), span("3", 300), span("2", 200), span("1", 100)));
+
+    assertThat(recentSpans.getNewest(10))
+      .extracting(StoredSpan::getId)
+      .containsExactly("4", "3", "2");
+  }
+
+  @Test
+  void shouldIndexLabelsOfRecentSpans() {
+    recentSpans.load(List.of(span("2", 200, "hitchhiker.org/jenkins"), span("1", 100, "hitchhiker.org/redmine")));
+    recentSpans.addAll(List.of(span("3", 300, "hitchhiker.org/jenkins/job")));
+
+    assertThat(recentSpans.getLabelCandidates("jenkins")).contains(Set.of("2", "3"));
+    assertThat(recentSpans.getLabelCandidates("redmine")).contains(Set.of("1"));
+    assertThat(recentSpans.getLabelCandidates("gitlab")).contains(Set.of());
+    assertThat(recentSpans.getLabelCandidates("je")).isEmpty();
+  }
+
+  @Test
+  void shouldRemoveEvictedAndReplacedSpansFromLabelIndex() {
+    recentSpans.addAll(List.of(span("1", 100, "hitchhiker.org/redmine"), span("2", 200, "hitchhiker.org/jenkins")));
+    recentSpans.addAll(List.of(span("2", 300, "hitchhiker.org/gitlab"), span("3", 400, "hitchhiker.org/scm"), span("4", 500, "hitchhiker.org/scm")));
+
+    assertThat(recentSpans.getLabelCandidates("redmine")).contains(Set.of());
+    assertThat(recentSpans.getLabelCandidates("jenkins")).contains(Set.of());
+    assertThat(recentSpans.getLabelCandidates("gitlab")).contains(Set.of("2"));
+    assertThat(recentSpans.getLabelCandidates("hitchhiker")).contains(Set.of("2", "3", "4"));
+  }
+
+  private StoredSpan span(String id, long closed) {
+    return span(id, closed, "hitchhiker.org/scm");
+  }
+
+  private StoredSpan span(String id, long closed, String url) {
+    SpanContext spanContext = new SpanContext("Jenkins", ImmutableMap.of("url", url), Instant.ofEpochMilli(0), Instant.ofEpochMilli(closed), false);
+    return new StoredSpan(id, spanContext.getKind(), new SpanContextStoreWrapper(spanContext));
+  }
+}
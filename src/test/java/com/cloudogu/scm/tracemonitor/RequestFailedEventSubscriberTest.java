@@ -19,6 +19,7 @@ package com.cloudogu.scm.tracemonitor;
 import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -27,7 +28,7 @@ import sonia.scm.trace.SpanContext;
 
 import java.time.Instant;
 
-import static org.mockito.ArgumentMatchers.any;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,10 +41,13 @@ class RequestFailedEventSubscriberTest {
   private RequestFailedEventSubscriber subscriber;
 
   @Test
-  void shouldSendEventWithSameContext() {
+  void shouldSendEventReferencingSpan() {
     SpanContext context = new SpanContext("Jenkins", ImmutableMap.of(), Instant.now(), Instant.now().plusMillis(100L), true);
-    subscriber.onEvent(new RequestFailedEvent(context));
+    subscriber.onEvent(new RequestFailedEvent(context, "42"));
 
-    verify(eventBus).post(any(RequestFailedEventSubscriber.RequestFailedMyEvent.class));
+    ArgumentCaptor<RequestFailedEventSubscriber.RequestFailedMyEvent> event = ArgumentCaptor.forClass(RequestFailedEventSubscriber.RequestFailedMyEvent.class);
+    verify(eventBus).post(event.capture());
+    assertThat(event.getValue().getKind()).isEqualTo("Jenkins");
+    assertThat(event.getValue().getId()).isEqualTo("42");
   }
 }
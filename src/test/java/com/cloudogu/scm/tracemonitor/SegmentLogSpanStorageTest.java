@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sonia.scm.trace.SpanContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentLogSpanStorageTest {
+
+  private static final int SEGMENT_SIZE = 1024;
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void shouldReadNewestFirst() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 3);
+
+    assertThat(findUrls(storage, "Jenkins", 10)).containsExactly("/2", "/1", "/0");
+    assertThat(findUrls(storage, "Jenkins", 2)).containsExactly("/2", "/1");
+  }
+
+  @Test
+  void shouldReturnKinds() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 1);
+    writeSpans(storage, "Release Feed/äöü", 1);
+
+    assertThat(storage.getKinds()).containsExactlyInAnyOrder("Jenkins", "Release Feed/äöü");
+  }
+
+  @Test
+  void shouldReturnLatestVersionOfUpdatedEntry() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    storage.write("Jenkins", writer -> {
+      String id = writer.insert(wrapper("/first"));
+      writer.insert(wrapper("/second"));
+      writer.update(id, wrapper("/updated"));
+    });
+
+    assertThat(findUrls(storage, "Jenkins", 10)).containsExactly("/updated", "/second");
+  }
+
+  @Test
+  void shouldGetLatestVersionById() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    String[] ids = new String[1];
+    storage.write("Jenkins", writer -> {
+      ids[0] = writer.insert(wrapper("/first"));
+      writer.insert(wrapper("/second"));
+      writer.update(ids[0], wrapper("/updated"));
+    });
+
+    assertThat(storage.get("Jenkins", ids[0], (id, wrapper) -> new StoredSpan(id, "Jenkins", wrapper)))
+      .hasValueSatisfying(span -> {
+        assertThat(span.getId()).isEqualTo(ids[0]);
+        assertThat(span.getLabels()).containsEntry("url", "/updated");
+      });
+    assertThat(storage.get("Jenkins", "42", (id, wrapper) -> new StoredSpan(id, "Jenkins", wrapper))).isEmpty();
+  }
+
+  @Test
+  void shouldRotateSegments() throws IOException {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+
+    writeSpans(storage, "Jenkins", 100);
+
+    assertThat(countSegments()).isGreaterThan(1);
+    assertThat(findUrls(storage, "Jenkins", 1000)).hasSize(100).startsWith("/99");
+  }
+
+  @Test
+  void shouldDropWholeSegmentsForRetention() throws IOException {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 100);
+    long segments = countSegments();
+
+    storage.retain("Jenkins", 10);
+
+    assertThat(countSegments()).isLessThan(segments);
+    assertThat(findUrls(storage, "Jenkins", 1000))
+      .hasSizeGreaterThanOrEqualTo(10)
+      .hasSizeLessThan(100)
+      .startsWith("/99");
+  }
+
+  @Test
+  void shouldReopenExistingSegments() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 50);
+
+    SegmentLogSpanStorage reopened = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    reopened.write("Jenkins", writer -> writer.insert(wrapper("/new")));
+
+    assertThat(findUrls(reopened, "Jenkins", 1000)).hasSize(51).startsWith("/new", "/49");
+  }
+
+  @Test
+  void shouldKeepOrderOfSegmentsWithUpdatesAfterReopen() throws IOException {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    String[] ids = new String[1];
+    storage.write("Jenkins", writer -> ids[0] = writer.insert(wrapper("/first")));
+    writeSpans(storage, "Jenkins", 20);
+    long segments = countSegments();
+    int version = 0;
+    while (countSegments() == segments) {
+      String url = "/updated/" + version++;
+      storage.write("Jenkins", writer -> writer.update(ids[0], wrapper(url)));
+    }
+    String latest = "/updated/" + (version - 1);
+
+    SegmentLogSpanStorage reopened = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+
+    assertThat(findUrls(reopened, "Jenkins", 1)).containsExactly(latest);
+    assertThat(reopened.get("Jenkins", ids[0], (id, wrapper) -> new StoredSpan(id, "Jenkins", wrapper)))
+      .hasValueSatisfying(span -> assertThat(span.getLabels()).containsEntry("url", latest));
+
+    reopened.retain("Jenkins", 1);
+
+    assertThat(findUrls(reopened, "Jenkins", 1)).containsExactly(latest);
+  }
+
+  @Test
+  void shouldNotStorePartialWrites() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+
+    assertThrows(IllegalStateException.class, () -> storage.write("Jenkins", writer -> {
+      writer.insert(wrapper("/lost"));
+      throw new IllegalStateException("failed");
+    }));
+
+    assertThat(findUrls(storage, "Jenkins", 10)).isEmpty();
+  }
+
+  @Test
+  void shouldNotStorePartOfBatchWithTooLargeSpan() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 1);
+
+    assertThrows(IllegalArgumentException.class, () -> storage.write("Jenkins", writer -> {
+      writer.insert(wrapper("/lost"));
+      writer.insert(wrapper("/" + "x".repeat(SEGMENT_SIZE)));
+    }));
+    writeSpans(storage, "Jenkins", 1);
+
+    assertThat(findUrls(storage, "Jenkins", 10)).containsExactly("/0", "/0");
+    assertThat(storage.findNewest("Jenkins", 10, (id, wrapper) -> id)).doesNotHaveDuplicates();
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("lost"))).isEmpty();
+  }
+
+  @Test
+  void shouldSkipRetainedSegmentsWhichCouldNotBeDeleted() throws IOException {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 100);
+    Path oldestSegment = segmentFiles().get(0);
+    byte[] content = Files.readAllBytes(oldestSegment);
+
+    storage.retain("Jenkins", 10);
+    List<String> retained = findUrls(storage, "Jenkins", 1000);
+    // simulates a segment file, which is still mapped and cannot be deleted
+    Files.write(oldestSegment, content);
+
+    SegmentLogSpanStorage reopened = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+
+    assertThat(findUrls(reopened, "Jenkins", 1000)).isEqualTo(retained);
+    assertThat(oldestSegment).doesNotExist();
+  }
+
+  @Test
+  void shouldFindByLabelFilter() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 100);
+
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/5"))).hasSize(11);
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/55"))).containsExactly("/55");
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/555"))).isEmpty();
+  }
+
+  @Test
+  void shouldKeepLabelIndexUpToDate() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 100);
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/55"))).containsExactly("/55");
+
+    storage.write("Jenkins", writer -> {
+      writer.update("56", wrapper("/other"));
+      writer.insert(wrapper("/550"));
+    });
+    storage.retain("Jenkins", 10);
+
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/55"))).containsExactly("/550");
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("other"))).containsExactly("/other");
+    List<String> remaining = findUrls(storage, "Jenkins", 1000);
+    for (String filter : List.of("/10", "/90", "/99")) {
+      assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter(filter)))
+        .containsExactlyInAnyOrderElementsOf(remaining.stream().filter(url -> url.contains(filter)).toList());
+    }
+  }
+
+  @Test
+  void shouldOnlyFindNewestEntriesWithinWindow() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    writeSpans(storage, "Jenkins", 100);
+    storage.write("Jenkins", writer -> writer.update("5", wrapper("/updated")));
+
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all(), 10)).hasSize(10).contains("/updated", "/99").doesNotContain("/90");
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("/9"), 10)).hasSize(9).doesNotContain("/9", "/90");
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withLabelFilter("updated"), 10)).containsExactly("/updated");
+    assertThat(storage.count("Jenkins", SpanQuery.all().withFrom(Instant.ofEpochMilli(0)), 10)).isEqualTo(10);
+  }
+
+  @Test
+  void shouldFindByTimeRange() {
+    SegmentLogSpanStorage storage = new SegmentLogSpanStorage(directory, SEGMENT_SIZE);
+    storage.write("Jenkins", writer -> {
+      for (int i = 0; i < 100; i++) {
+        writer.insert(wrapper("/" + i, i));
+      }
+    });
+    storage.write("Jenkins", writer -> writer.update("43", wrapper("/moved", 500)));
+
+    SpanQuery query = SpanQuery.all().withFrom(Instant.ofEpochMilli(40)).withTo(Instant.ofEpochMilli(45));
+    assertThat(findUrls(storage, "Jenkins", query)).containsExactlyInAnyOrder("/40", "/41", "/43", "/44");
+    assertThat(findUrls(storage, "Jenkins", SpanQuery.all().withFrom(Instant.ofEpochMilli(99)))).containsExactlyInAnyOrder("/99", "/moved");
+    assertThat(findUrls(storage, "Jenkins", query.withLabelFilter("/44"))).containsExactly("/44");
+  }
+
+  private void writeSpans(SegmentLogSpanStorage storage, String kind, int count) {
+    for (int i = 0; i < count; i++) {
+      String url = "/" + i;
+      storage.write(kind, writer -> writer.insert(wrapper(url)));
+    }
+  }
+
+  private List<String> findUrls(SegmentLogSpanStorage storage, String kind, int limit) {
+    return storage.findNewest(kind, limit, (id, wrapper) -> wrapper.decodeSpanContext(kind).getLabels().get("url"));
+  }
+
+  private List<String> findUrls(SegmentLogSpanStorage storage, String kind, SpanQuery query) {
+    return findUrls(storage, kind, query, Integer.MAX_VALUE);
+  }
+
+  private List<String> findUrls(SegmentLogSpanStorage storage, String kind, SpanQuery query, int window) {
+    return storage.find(kind, query, window, 0, Integer.MAX_VALUE, (id, wrapper) -> new StoredSpan(id, kind, wrapper))
+      .stream()
+      .map(span -> span.getLabels().get("url"))
+      .toList();
+  }
+
+  private SpanContextStoreWrapper wrapper(String url) {
+    return wrapper(url, 42);
+  }
+
+  private SpanContextStoreWrapper wrapper(String url, long closed) {
+    return new SpanContextStoreWrapper(
+      new SpanContext("Jenkins", ImmutableMap.of("url", url), Instant.ofEpochMilli(0), Instant.ofEpochMilli(closed), false)
+    );
+  }
+
+  private long countSegments() throws IOException {
+    return segmentFiles().size();
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(file -> file.toString().endsWith(".segment")).sorted().toList();
+    }
+  }
+}
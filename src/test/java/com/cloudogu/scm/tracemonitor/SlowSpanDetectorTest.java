@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowSpanDetectorTest {
+
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+  private final SlowSpanDetector detector = new SlowSpanDetector(statistics);
+
+  @Test
+  void shouldTreatAllSpansAsSlowDuringWarmUp() {
+    for (int i = 0; i < 100; i++) {
+      assertThat(detector.isSlowOrFailed(createSpan("Jenkins", 1, false), 95.0)).isTrue();
+    }
+    assertThat(statistics.kind("Jenkins").getSlowThresholdMillis()).isEqualTo(-1);
+  }
+
+  @Test
+  void shouldDetectSlowSpans() {
+    warmUp("Jenkins");
+
+    assertThat(detector.isSlowOrFailed(createSpan("Jenkins", 10, false), 95.0)).isFalse();
+    assertThat(detector.isSlowOrFailed(createSpan("Jenkins", 500, false), 95.0)).isTrue();
+    assertThat(statistics.kind("Jenkins").getBelowThreshold()).isEqualTo(1);
+    assertThat(statistics.kind("Jenkins").getSlowThresholdMillis()).isBetween(90L, 99L);
+  }
+
+  @Test
+  void shouldAlwaysKeepFailedSpans() {
+    warmUp("Jenkins");
+
+    assertThat(detector.isSlowOrFailed(createSpan("Jenkins", 1, true), 95.0)).isTrue();
+  }
+
+  @Test
+  void shouldEstimatePerKind() {
+    warmUp("Jenkins");
+
+    assertThat(detector.isSlowOrFailed(createSpan("Redmine", 1, false), 95.0)).isTrue();
+  }
+
+  @Test
+  void shouldStartNewEstimateIfPercentileChanges() {
+    warmUp("Jenkins");
+
+    assertThat(detector.isSlowOrFailed(createSpan("Jenkins", 1, false), 99.0)).isTrue();
+  }
+
+  private void warmUp(String kind) {
+    for (int i = 0; i < 1000; i++) {
+      detector.isSlowOrFailed(createSpan(kind, i % 100, false), 95.0);
+    }
+  }
+
+  private SpanContext createSpan(String kind, long duration, boolean failed) {
+    return new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0L), Instant.ofEpochMilli(duration), failed);
+  }
+}
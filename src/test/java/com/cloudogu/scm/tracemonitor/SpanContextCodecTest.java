@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpanContextCodecTest {
+
+  @Test
+  void shouldEncodeAndDecodeSpanContext() {
+    SpanContext spanContext = new SpanContext(
+      "Jenkins",
+      ImmutableMap.of("url", "https://hitchhiker.org/jenkins", "method", "POST", "status", "500", "Trillian", "Tricia McMillan"),
+      Instant.parse("2024-03-14T13:37:42.123456789Z"),
+      Instant.parse("2024-03-14T13:37:43.000000001Z"),
+      true
+    );
+
+    SpanContext decoded = SpanContextCodec.decode("Jenkins", SpanContextCodec.encode(spanContext));
+
+    assertThat(decoded.getKind()).isEqualTo("Jenkins");
+    assertThat(decoded.getOpened()).isEqualTo(spanContext.getOpened());
+    assertThat(decoded.getClosed()).isEqualTo(spanContext.getClosed());
+    assertThat(decoded.isFailed()).isTrue();
+    assertThat(decoded.getLabels()).containsExactlyEntriesOf(spanContext.getLabels());
+  }
+
+  @Test
+  void shouldEncodeSpanContextWithoutLabels() {
+    SpanContext spanContext = new SpanContext("Jenkins", Map.of(), Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+
+    SpanContext decoded = SpanContextCodec.decode("Jenkins", SpanContextCodec.encode(spanContext));
+
+    assertThat(decoded.getLabels()).isEmpty();
+    assertThat(decoded.isFailed()).isFalse();
+    assertThat(decoded.duration().toMillis()).isEqualTo(42);
+  }
+
+  @Test
+  void shouldEncodeNullLabelValues() {
+    Map<String, String> labels = new HashMap<>();
+    labels.put("url", null);
+    labels.put("Trillian", null);
+    labels.put("status", "");
+    SpanContext spanContext = new SpanContext("Jenkins", labels, Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+
+    SpanContext decoded = SpanContextCodec.decode("Jenkins", SpanContextCodec.encode(spanContext));
+
+    assertThat(decoded.getLabels())
+      .hasSize(3)
+      .containsEntry("url", null)
+      .containsEntry("Trillian", null)
+      .containsEntry("status", "");
+  }
+
+  @Test
+  void shouldDecodeFormerVersion() {
+    byte[] encoded = {1, 0, 0, 84, 0, 1, 0, 8, 'T', 'r', 'i', 'l', 'l', 'i', 'a', 'n', 6, 'T', 'r', 'i', 'c', 'i', 'a'};
+
+    SpanContext decoded = SpanContextCodec.decode("Jenkins", encoded);
+
+    assertThat(decoded.duration().toNanos()).isEqualTo(42);
+    assertThat(decoded.getLabels()).containsExactly(entry("Trillian", "Tricia"));
+  }
+
+  @Test
+  void shouldEncodeKnownLabelKeysCompact() {
+    SpanContext known = new SpanContext("Jenkins", ImmutableMap.of("url", "x"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+    SpanContext unknown = new SpanContext("Jenkins", ImmutableMap.of("uri", "x"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+
+    assertThat(SpanContextCodec.encode(known)).hasSizeLessThan(SpanContextCodec.encode(unknown).length);
+  }
+
+  @Test
+  void shouldNotEncodeKind() {
+    SpanContext spanContext = new SpanContext("Jenkins", Map.of(), Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false);
+
+    SpanContext decoded = SpanContextCodec.decode("Redmine", SpanContextCodec.encode(spanContext));
+
+    assertThat(decoded.getKind()).isEqualTo("Redmine");
+  }
+
+  @Test
+  void shouldFailForUnknownVersion() {
+    byte[] encoded = {42};
+
+    assertThrows(IllegalArgumentException.class, () -> SpanContextCodec.decode("Jenkins", encoded));
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpanCursorTest {
+
+  @Test
+  void shouldDecodeEncodedCursor() {
+    SpanCursor cursor = new SpanCursor(Instant.ofEpochSecond(1_700_000_000, 42), "Release Feed.v2", "1337");
+
+    SpanCursor decoded = SpanCursor.decode(cursor.encode());
+
+    assertThat(decoded).isEqualTo(cursor);
+  }
+
+  @Test
+  void shouldRejectInvalidCursor() {
+    assertThrows(IllegalArgumentException.class, () -> SpanCursor.decode("not-a-cursor"));
+    assertThrows(IllegalArgumentException.class, () -> SpanCursor.decode("%%%"));
+  }
+
+  @Test
+  void shouldOrderSpansClosedAtSameInstantById() {
+    SpanCursor cursor = new SpanCursor(Instant.ofEpochMilli(200), "Jenkins", "10");
+
+    assertThat(cursor.isBefore(span("Jenkins", "9", 200))).isTrue();
+    assertThat(cursor.isBefore(span("Jenkins", "10", 200))).isFalse();
+    assertThat(cursor.isBefore(span("Jenkins", "11", 200))).isFalse();
+    assertThat(cursor.isBefore(span("Jenkins", "42", 100))).isTrue();
+    assertThat(cursor.isBefore(span("Jenkins", "1", 300))).isFalse();
+  }
+
+  @Test
+  void shouldOrderSpansOfOtherKindsClosedAtSameInstantByKind() {
+    SpanCursor cursor = new SpanCursor(Instant.ofEpochMilli(200), "Jenkins", "10");
+
+    assertThat(cursor.isBefore(span("Hudson", "10", 200))).isTrue();
+    assertThat(cursor.isBefore(span("Redmine", "10", 200))).isFalse();
+    assertThat(cursor.isBefore(span("Redmine", "9", 200))).isFalse();
+  }
+
+  private StoredSpan span(String kind, String id, long closed) {
+    SpanContext spanContext = new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(closed), false);
+    return new StoredSpan(id, spanContext, new SpanContextStoreWrapper(spanContext));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpanExportFormatTest {
+
+  @Test
+  void shouldWriteOneJsonObjectPerLine() throws IOException {
+    String export = export(SpanExportFormat.NDJSON);
+
+    assertThat(export).isEqualTo(
+      "{\"id\":\"1\",\"kind\":\"Jenkins\",\"labels\":{\"url\":\"hitchhiker.org/jenkins\"},\"opened\":\"1970-01-01T00:00:00Z\",\"closed\":\"1970-01-01T00:00:00.200Z\",\"durationInMillis\":200,\"failed\":true,\"count\":1,\"firstClosed\":\"1970-01-01T00:00:00.200Z\",\"minDurationInMillis\":200,\"maxDurationInMillis\":200,\"averageDurationInMillis\":200}\n" +
+        "{\"id\":\"2\",\"kind\":\"Jenkins\",\"labels\":{\"url\":\"hitchhiker.org/jenkins?a=\\\"b,c\\\"\"},\"opened\":\"1970-01-01T00:00:00Z\",\"closed\":\"1970-01-01T00:00:00.300Z\",\"durationInMillis\":300,\"failed\":false,\"count\":1,\"firstClosed\":\"1970-01-01T00:00:00.300Z\",\"minDurationInMillis\":300,\"maxDurationInMillis\":300,\"averageDurationInMillis\":300}\n"
+    );
+  }
+
+  @Test
+  void shouldWriteCsvWithHeader() throws IOException {
+    String export = export(SpanExportFormat.CSV);
+
+    assertThat(export.split("\r\n")).containsExactly(
+      "id,kind,labels,opened,closed,durationInMillis,failed,count,firstClosed,minDurationInMillis,maxDurationInMillis,averageDurationInMillis",
+      "1,Jenkins,\"{\"\"url\"\":\"\"hitchhiker.org/jenkins\"\"}\",1970-01-01T00:00:00Z,1970-01-01T00:00:00.200Z,200,true,1,1970-01-01T00:00:00.200Z,200,200,200",
+      "2,Jenkins,\"{\"\"url\"\":\"\"hitchhiker.org/jenkins?a=\\\"\"b,c\\\"\"\"\"}\",1970-01-01T00:00:00Z,1970-01-01T00:00:00.300Z,300,false,1,1970-01-01T00:00:00.300Z,300,300,300"
+    );
+  }
+
+  @Test
+  void shouldFindFormatByName() {
+    assertThat(SpanExportFormat.of("ndjson")).isEqualTo(SpanExportFormat.NDJSON);
+    assertThat(SpanExportFormat.of("CSV")).isEqualTo(SpanExportFormat.CSV);
+    assertThrows(IllegalArgumentException.class, () -> SpanExportFormat.of("xml"));
+  }
+
+  private String export(SpanExportFormat format) throws IOException {
+    StringWriter writer = new StringWriter();
+    try (SpanExportFormat.SpanWriter spans = format.open(writer)) {
+      spans.write(span("1", "hitchhiker.org/jenkins", 200, true));
+      spans.write(span("2", "hitchhiker.org/jenkins?a=\"b,c\"", 300, false));
+    }
+    return writer.toString();
+  }
+
+  private StoredSpan span(String id, String url, long closed, boolean failed) {
+    SpanContext spanContext = new SpanContext("Jenkins", ImmutableMap.of("url", url), Instant.ofEpochMilli(0), Instant.ofEpochMilli(closed), failed);
+    return new StoredSpan(id, spanContext, new SpanContextStoreWrapper(spanContext));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpanFieldsTest {
+
+  @Test
+  void shouldIncludeAllFieldsByDefault() {
+    SpanFields fields = SpanFields.parse("");
+
+    assertThat(SpanFields.PROPERTIES).allMatch(fields::includes);
+    assertThat(fields.includesLabel("url")).isTrue();
+  }
+
+  @Test
+  void shouldIncludeListedFieldsOnly() {
+    SpanFields fields = SpanFields.parse("kind, closed,failed");
+
+    assertThat(fields.includes("kind")).isTrue();
+    assertThat(fields.includes("closed")).isTrue();
+    assertThat(fields.includes("failed")).isTrue();
+    assertThat(fields.includes("labels")).isFalse();
+    assertThat(fields.includes("durationInMillis")).isFalse();
+  }
+
+  @Test
+  void shouldRestrictLabelKeys() {
+    SpanFields fields = SpanFields.parse("kind,labels.url");
+
+    assertThat(fields.includes("labels")).isTrue();
+    assertThat(fields.includesLabel("url")).isTrue();
+    assertThat(fields.includesLabel("error")).isFalse();
+  }
+
+  @Test
+  void shouldIncludeAllLabelsIfLabelsAreListed() {
+    SpanFields fields = SpanFields.parse("labels.url,labels");
+
+    assertThat(fields.includesLabel("url")).isTrue();
+    assertThat(fields.includesLabel("error")).isTrue();
+  }
+
+  @Test
+  void shouldFailForUnknownFields() {
+    assertThrows(IllegalArgumentException.class, () -> SpanFields.parse("kind,password"));
+  }
+}
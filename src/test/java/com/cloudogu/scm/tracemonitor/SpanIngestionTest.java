@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
+import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.cloudogu.scm.tracemonitor.config.OverflowPolicy;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpanIngestionTest {
+
+  @Mock
+  private TraceStore store;
+  @Mock
+  private GlobalConfigStore globalConfigStore;
+  @Mock
+  private LiveTail liveTail;
+  @Mock
+  private ScmEventBus eventBus;
+  @Captor
+  private ArgumentCaptor<Collection<SpanContext>> writtenSpans;
+
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+  private final QueuingExecutor executor = new QueuingExecutor();
+
+  private SpanIngestion ingestion;
+
+  @BeforeEach
+  void initIngestion() {
+    ingestion = new SpanIngestion(store, globalConfigStore, statistics, liveTail, eventBus, executor, 50);
+  }
+
+  @Test
+  void shouldNotWriteOnCallingThread() {
+    ingestion.offer(createSpan("Jenkins"));
+
+    verify(store, never()).addAll(any(), anyCollection());
+    assertThat(executor.tasks).hasSize(1);
+  }
+
+  @Test
+  void shouldScheduleOneDrainPerKind() {
+    ingestion.offer(createSpan("Jenkins"));
+    ingestion.offer(createSpan("Jenkins"));
+    ingestion.offer(createSpan("Redmine"));
+
+    assertThat(executor.tasks).hasSize(2);
+  }
+
+  @Test
+  void shouldWriteOneBatchPerKind() {
+    SpanContext jenkins1 = createSpan("Jenkins");
+    SpanContext redmine = createSpan("Redmine");
+    SpanContext jenkins2 = createSpan("Jenkins");
+    ingestion.offer(jenkins1);
+    ingestion.offer(redmine);
+    ingestion.offer(jenkins2);
+
+    executor.runAll();
+
+    verify(store).addAll("Jenkins", List.of(jenkins1, jenkins2));
+    verify(store).addAll("Redmine", List.of(redmine));
+  }
+
+  @Test
+  void shouldContinueWithOtherKindsIfStoreFails() {
+    SpanContext redmine = createSpan("Redmine");
+    doThrow(IllegalStateException.class).when(store).addAll(eq("Jenkins"), anyCollection());
+    ingestion.offer(createSpan("Jenkins"));
+    ingestion.offer(redmine);
+
+    executor.runAll();
+
+    verify(store).addAll("Redmine", List.of(redmine));
+  }
+
+  @Test
+  void shouldPublishStoredSpansAndReportFailuresWithId() {
+    SpanContext successful = createSpan("Jenkins", 0, false);
+    SpanContext failed = createSpan("Jenkins", 1, true);
+    StoredSpan storedSuccessful = storedSpan("1", successful);
+    StoredSpan storedFailed = storedSpan("2", failed);
+    when(store.addAll("Jenkins", List.of(successful, failed))).thenReturn(List.of(storedSuccessful, storedFailed));
+    ingestion.offer(successful);
+    ingestion.offer(failed);
+
+    executor.runAll();
+
+    verify(liveTail).publish(storedSuccessful);
+    verify(liveTail).publish(storedFailed);
+    ArgumentCaptor<RequestFailedEvent> event = ArgumentCaptor.forClass(RequestFailedEvent.class);
+    verify(eventBus).post(event.capture());
+    assertThat(event.getValue().getContext()).isSameAs(failed);
+    assertThat(event.getValue().getId()).isEqualTo("2");
+  }
+
+  @Test
+  void shouldReportFailuresWithoutIdIfStoreFails() {
+    SpanContext failed = createSpan("Jenkins", 0, true);
+    doThrow(IllegalStateException.class).when(store).addAll(eq("Jenkins"), anyCollection());
+    ingestion.offer(failed);
+    ingestion.offer(createSpan("Jenkins", 1, false));
+
+    executor.runAll();
+
+    ArgumentCaptor<RequestFailedEvent> event = ArgumentCaptor.forClass(RequestFailedEvent.class);
+    verify(eventBus).post(event.capture());
+    assertThat(event.getValue().getContext()).isSameAs(failed);
+    assertThat(event.getValue().getId()).isNull();
+    verify(liveTail, never()).publish(any());
+  }
+
+  @Test
+  void shouldOnlyLoseSpansWhichCannotBeStored() {
+    SpanContext first = createSpan("Jenkins", 0, false);
+    SpanContext broken = createSpan("Jenkins", 1, true);
+    SpanContext last = createSpan("Jenkins", 2, false);
+    StoredSpan storedFirst = storedSpan("1", first);
+    StoredSpan storedLast = storedSpan("2", last);
+    when(store.addAll("Jenkins", List.of(first))).thenReturn(List.of(storedFirst));
+    when(store.addAll("Jenkins", List.of(last))).thenReturn(List.of(storedLast));
+    doThrow(IllegalStateException.class).when(store).addAll("Jenkins", List.of(first, broken, last));
+    doThrow(IllegalStateException.class).when(store).addAll("Jenkins", List.of(broken));
+    ingestion.offer(first);
+    ingestion.offer(broken);
+    ingestion.offer(last);
+
+    executor.runAll();
+
+    verify(liveTail).publish(storedFirst);
+    verify(liveTail).publish(storedLast);
+    ArgumentCaptor<RequestFailedEvent> event = ArgumentCaptor.forClass(RequestFailedEvent.class);
+    verify(eventBus).post(event.capture());
+    assertThat(event.getValue().getContext()).isSameAs(broken);
+    assertThat(event.getValue().getId()).isNull();
+  }
+
+  @Test
+  void shouldWriteQueuedSpansOnShutdown() {
+    SpanContext span = createSpan("Jenkins");
+    ingestion.offer(span);
+
+    ingestion.contextDestroyed(null);
+
+    verify(store).addAll("Jenkins", List.of(span));
+  }
+
+  @Test
+  void shouldStopWritingQueuedSpansAfterShutdownTimeout() {
+    for (int i = 0; i < 600; i++) {
+      ingestion.offer(createSpan("Jenkins", i, false));
+    }
+    when(store.addAll(eq("Jenkins"), anyCollection())).thenAnswer(invocation -> {
+      Thread.sleep(100);
+      return List.of();
+    });
+
+    ingestion.contextDestroyed(null);
+
+    verify(store, times(1)).addAll(eq("Jenkins"), anyCollection());
+  }
+
+  @Test
+  void shouldScheduleNewDrainAfterQueueWasEmptied() {
+    ingestion.offer(createSpan("Jenkins"));
+    executor.runAll();
+
+    ingestion.offer(createSpan("Jenkins"));
+
+    assertThat(executor.tasks).hasSize(1);
+  }
+
+  @Nested
+  class WithFullQueue {
+
+    private final List<SpanContext> queuedSpans = new ArrayList<>();
+
+    @BeforeEach
+    void fillQueue() {
+      for (int i = 0; i < 1000; i++) {
+        SpanContext span = createSpan("Jenkins", i, false);
+        queuedSpans.add(span);
+        ingestion.offer(span);
+      }
+    }
+
+    @Test
+    void shouldDropNewestSpan() {
+      mockOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+      SpanContext newest = createSpan("Jenkins", 1000, false);
+
+      ingestion.offer(newest);
+      executor.runAll();
+
+      assertThat(writtenSpans()).containsExactlyElementsOf(queuedSpans);
+      assertThat(statistics.kind("Jenkins").getAccepted()).isEqualTo(1000);
+      assertThat(statistics.kind("Jenkins").getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDropOldestSpan() {
+      mockOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+      SpanContext newest = createSpan("Jenkins", 1000, false);
+
+      ingestion.offer(newest);
+      executor.runAll();
+
+      assertThat(writtenSpans())
+        .hasSize(1000)
+        .doesNotContain(queuedSpans.get(0))
+        .endsWith(newest);
+      assertThat(statistics.kind("Jenkins").getAccepted()).isEqualTo(1001);
+      assertThat(statistics.kind("Jenkins").getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReportDroppedFailedSpanWithoutId() {
+      mockOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+      SpanContext failed = createSpan("Jenkins", 1000, true);
+
+      ingestion.offer(failed);
+
+      ArgumentCaptor<RequestFailedEvent> event = ArgumentCaptor.forClass(RequestFailedEvent.class);
+      verify(eventBus).post(event.capture());
+      assertThat(event.getValue().getContext()).isSameAs(failed);
+      assertThat(event.getValue().getId()).isNull();
+    }
+
+    @Test
+    void shouldDropNewSuccessfulSpan() {
+      mockOverflowPolicy(OverflowPolicy.DROP_SUCCESSFUL);
+
+      ingestion.offer(createSpan("Jenkins", 1000, false));
+      executor.runAll();
+
+      assertThat(writtenSpans()).containsExactlyElementsOf(queuedSpans);
+      assertThat(statistics.kind("Jenkins").getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepNewFailedSpanByDroppingSuccessfulSpan() {
+      mockOverflowPolicy(OverflowPolicy.DROP_SUCCESSFUL);
+      SpanContext failed = createSpan("Jenkins", 1000, true);
+
+      ingestion.offer(failed);
+      executor.runAll();
+
+      assertThat(writtenSpans())
+        .hasSize(1000)
+        .doesNotContain(queuedSpans.get(0))
+        .endsWith(failed);
+      assertThat(statistics.kind("Jenkins").getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDropSpanAfterBlockingForAWhile() {
+      mockOverflowPolicy(OverflowPolicy.BLOCK);
+
+      ingestion.offer(createSpan("Jenkins", 1000, false));
+      executor.runAll();
+
+      assertThat(writtenSpans()).containsExactlyElementsOf(queuedSpans);
+      assertThat(statistics.kind("Jenkins").getProducerWaits()).isEqualTo(1);
+      assertThat(statistics.kind("Jenkins").getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotAffectOtherKinds() {
+      SpanContext redmine = createSpan("Redmine");
+
+      ingestion.offer(redmine);
+      executor.runAll();
+
+      verify(store).addAll("Redmine", List.of(redmine));
+      assertThat(statistics.kind("Redmine").getDropped()).isZero();
+    }
+
+    private void mockOverflowPolicy(OverflowPolicy policy) {
+      GlobalConfig config = new GlobalConfig();
+      config.setOverflowPolicy(policy);
+      when(globalConfigStore.get()).thenReturn(config);
+    }
+
+    private List<SpanContext> writtenSpans() {
+      verify(store, atLeastOnce()).addAll(eq("Jenkins"), writtenSpans.capture());
+      return writtenSpans.getAllValues().stream().flatMap(Collection::stream).toList();
+    }
+  }
+
+  private SpanContext createSpan(String kind) {
+    return createSpan(kind, 0, false);
+  }
+
+  private SpanContext createSpan(String kind, long opened, boolean failed) {
+    return new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(opened), Instant.ofEpochMilli(opened + 200L), failed);
+  }
+
+  private StoredSpan storedSpan(String id, SpanContext spanContext) {
+    return new StoredSpan(id, spanContext, new SpanContextStoreWrapper(spanContext));
+  }
+
+  private static class QueuingExecutor extends AbstractExecutorService {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    void runAll() {
+      List<Runnable> current = new ArrayList<>(tasks);
+      tasks.clear();
+      current.forEach(Runnable::run);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+  }
+}
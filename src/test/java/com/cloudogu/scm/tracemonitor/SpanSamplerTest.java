@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
+import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class SpanSamplerTest {
+
+  @Mock
+  private GlobalConfigStore globalConfigStore;
+
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+
+  @Test
+  void shouldAlwaysKeepFailedSpans() {
+    mockSamplingRate(0.0, Map.of());
+    SpanSampler sampler = new SpanSampler(globalConfigStore, statistics, () -> 0.99);
+
+    assertThat(sampler.sample(createSpan("Jenkins", true))).isTrue();
+  }
+
+  @Test
+  void shouldKeepAllSpansWithFullRate() {
+    mockSamplingRate(1.0, Map.of());
+    SpanSampler sampler = new SpanSampler(globalConfigStore, statistics, () -> 0.99);
+
+    assertThat(sampler.sample(createSpan("Jenkins", false))).isTrue();
+    assertThat(statistics.kind("Jenkins").getSampled()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldDiscardSpansAboveRate() {
+    mockSamplingRate(0.1, Map.of());
+    SpanSampler sampler = new SpanSampler(globalConfigStore, statistics, () -> 0.5);
+
+    assertThat(sampler.sample(createSpan("Jenkins", false))).isFalse();
+    assertThat(statistics.kind("Jenkins").getSampledOut()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldKeepSpansBelowRate() {
+    mockSamplingRate(0.1, Map.of());
+    SpanSampler sampler = new SpanSampler(globalConfigStore, statistics, () -> 0.05);
+
+    assertThat(sampler.sample(createSpan("Jenkins", false))).isTrue();
+  }
+
+  @Test
+  void shouldUseRateOfKind() {
+    mockSamplingRate(1.0, Map.of("Jenkins", 0.0));
+    SpanSampler sampler = new SpanSampler(globalConfigStore, statistics, () -> 0.0);
+
+    assertThat(sampler.sample(createSpan("Jenkins", false))).isFalse();
+    assertThat(sampler.sample(createSpan("Redmine", false))).isTrue();
+  }
+
+  private void mockSamplingRate(double rate, Map<String, Double> kindRates) {
+    GlobalConfig config = new GlobalConfig();
+    config.setSamplingRate(rate);
+    config.setKindSamplingRates(kindRates);
+    lenient().when(globalConfigStore.get()).thenReturn(config);
+  }
+
+  private SpanContext createSpan(String kind, boolean failed) {
+    return new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0L), Instant.ofEpochMilli(200L), failed);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import sonia.scm.trace.SpanContext;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoredSpanSerializerTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void shouldWriteAllFields() throws JsonProcessingException {
+    SpanContext spanContext = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(200), true);
+
+    String json = objectMapper.writeValueAsString(new StoredSpan("1", spanContext, new SpanContextStoreWrapper(spanContext)));
+
+    assertThat(json).isEqualTo(
+      "{\"id\":\"1\",\"kind\":\"Jenkins\",\"labels\":{\"url\":\"hitchhiker.org/jenkins\"},\"opened\":\"1970-01-01T00:00:00Z\",\"closed\":\"1970-01-01T00:00:00.200Z\",\"durationInMillis\":200,\"failed\":true,\"count\":1,\"firstClosed\":\"1970-01-01T00:00:00.200Z\",\"minDurationInMillis\":200,\"maxDurationInMillis\":200,\"averageDurationInMillis\":200}"
+    );
+  }
+
+  @Test
+  void shouldWriteSelectedFieldsOnly() throws JsonProcessingException {
+    SpanContext spanContext = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins", "error", "a long stack trace"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(200), true);
+    StoredSpan span = new StoredSpan("1", spanContext, new SpanContextStoreWrapper(spanContext));
+
+    String json = objectMapper.writeValueAsString(new SelectedSpans(List.of(span), SpanFields.parse("id,failed,labels.url")));
+
+    assertThat(json).isEqualTo("[{\"id\":\"1\",\"labels\":{\"url\":\"hitchhiker.org/jenkins\"},\"failed\":true}]");
+  }
+
+  @Test
+  void shouldWriteAggregatedValuesOfCoalescedSpans() throws JsonProcessingException {
+    SpanContext first = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(100), true);
+    SpanContext second = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(500), Instant.ofEpochMilli(800), true);
+    SpanContextStoreWrapper wrapper = new SpanContextStoreWrapper(first);
+    wrapper.merge(second);
+
+    String json = objectMapper.writeValueAsString(List.of(new StoredSpan("1", second, wrapper)));
+
+    assertThat(json)
+      .startsWith("[{\"id\":\"1\",\"kind\":\"Jenkins\"")
+      .contains("\"durationInMillis\":300,\"failed\":true,\"count\":2,\"firstClosed\":\"1970-01-01T00:00:00.100Z\",\"minDurationInMillis\":100,\"maxDurationInMillis\":300,\"averageDurationInMillis\":200}]");
+  }
+}
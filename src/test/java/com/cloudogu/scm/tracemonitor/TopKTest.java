@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKTest {
+
+  @Test
+  void shouldSelectFirstElementsInOrder() {
+    assertThat(TopK.select(Stream.of(5, 1, 9, 3, 7, 2), Comparator.<Integer>reverseOrder(), 3))
+      .containsExactly(9, 7, 5);
+  }
+
+  @Test
+  void shouldReturnAllElementsIfThereAreLess() {
+    assertThat(TopK.select(Stream.of(2, 3, 1), Comparator.<Integer>naturalOrder(), Integer.MAX_VALUE))
+      .containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void shouldReturnNothingForEmptyLimit() {
+    assertThat(TopK.select(Stream.of(1, 2), Comparator.<Integer>naturalOrder(), 0)).isEmpty();
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.cloudogu.scm.tracemonitor;
 
+import com.cloudogu.scm.tracemonitor.config.CaptureMode;
 import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
 import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
 import com.google.common.collect.ImmutableMap;
@@ -25,16 +26,22 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.event.ScmEventBus;
 import sonia.scm.store.QueryableStoreExtension;
 import sonia.scm.trace.SpanContext;
 
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.Collection;
 
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,14 +56,28 @@ class TraceExporterTest {
   private GlobalConfigStore globalConfigStore;
   @Mock
   private ScmEventBus eventBus;
+  @Mock
+  private LiveTail liveTail;
   private TraceStore store;
   private TraceExporter traceExporter;
 
   @BeforeEach
-  void initStore(SpanContextStoreWrapperStoreFactory queryableStoreFactory) {
+  void initStore(SpanContextStoreWrapperStoreFactory queryableStoreFactory, @TempDir Path segmentDirectory) {
     ThreadContext.bind(subject);
-    store = new TraceStore(queryableStoreFactory, globalConfigStore);
-    traceExporter = new TraceExporter(store, eventBus);
+    store = new TraceStore(
+      new QueryableSpanStorage(queryableStoreFactory),
+      new SegmentLogSpanStorage(segmentDirectory, SegmentLogSpanStorage.SEGMENT_SIZE),
+      globalConfigStore,
+      new TraceMonitorStatistics()
+    );
+    lenient().when(globalConfigStore.get()).thenReturn(new GlobalConfig(42, null));
+    TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+    traceExporter = new TraceExporter(
+      globalConfigStore,
+      new SpanSampler(globalConfigStore, statistics),
+      new SlowSpanDetector(statistics),
+      new SpanIngestion(store, globalConfigStore, statistics, liveTail, eventBus, newDirectExecutorService(), 10_000)
+    );
   }
 
   @AfterEach
@@ -71,7 +92,7 @@ class TraceExporterTest {
     traceExporter.export(createSpanContext(false));
 
     assertThat(store.getAll()).isNotEmpty();
-    SpanContext storedSpanContext = store.getAll().iterator().next();
+    SpanContext storedSpanContext = store.getAll().iterator().next().getSpanContext();
     assertThat(storedSpanContext.getKind()).isEqualTo("Jenkins");
     assertThat(storedSpanContext.getClosed()).isEqualTo(Instant.ofEpochMilli(200L));
     assertThat(storedSpanContext.getOpened()).isEqualTo(Instant.ofEpochMilli(0L));
@@ -80,14 +101,64 @@ class TraceExporterTest {
   }
 
   private SpanContext createSpanContext(boolean failed) {
-    return new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0L), Instant.ofEpochMilli(200L), failed);
+    return createSpanContext(200L, failed);
+  }
+
+  private SpanContext createSpanContext(long duration, boolean failed) {
+    return new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0L), Instant.ofEpochMilli(duration), failed);
+  }
+
+  @Test
+  void shouldNotStoreSpansWhichAreSampledOut() {
+    GlobalConfig config = new GlobalConfig(42, null);
+    config.setSamplingRate(0.0);
+    when(globalConfigStore.get()).thenReturn(config);
+
+    SpanContext span = createSpanContext(false);
+
+    traceExporter.export(span);
+
+    assertThat(store.getAll()).isEmpty();
+    verify(liveTail, never()).publish(any());
+  }
+
+  @Test
+  void shouldPublishStoredSpanToLiveTail() {
+    traceExporter.export(createSpanContext(true));
+
+    ArgumentCaptor<StoredSpan> published = ArgumentCaptor.forClass(StoredSpan.class);
+    verify(liveTail).publish(published.capture());
+    assertThat(published.getValue().getId()).isEqualTo(store.getAll().iterator().next().getId());
+  }
+
+  @Test
+  void shouldOnlyStoreSlowAndFailedSpansInSlowCaptureMode() {
+    GlobalConfig config = new GlobalConfig(10_000, null);
+    config.setCaptureMode(CaptureMode.SLOW_AND_FAILED);
+    config.setSlowSpanPercentile(95.0);
+    when(globalConfigStore.get()).thenReturn(config);
+    for (int i = 0; i < 1000; i++) {
+      traceExporter.export(createSpanContext(i % 100, false));
+    }
+    int storedDuringWarmUp = store.getAll().size();
+
+    traceExporter.export(createSpanContext(10, false));
+    traceExporter.export(createSpanContext(10, true));
+    traceExporter.export(createSpanContext(500, false));
+
+    Collection<StoredSpan> spans = store.getAll();
+    assertThat(spans).hasSize(storedDuringWarmUp + 2);
+    assertThat(spans.stream().filter(span -> span.getSpanContext().duration().toMillis() == 500)).hasSize(1);
   }
 
   @Test
-  void shouldFireRequestFailedEvent() {
+  void shouldFireRequestFailedEventWithIdOfStoredSpan() {
     traceExporter.export(createSpanContext(true));
 
-    verify(eventBus).post(any(RequestFailedEvent.class));
+    ArgumentCaptor<RequestFailedEvent> event = ArgumentCaptor.forClass(RequestFailedEvent.class);
+    verify(eventBus).post(event.capture());
+    assertThat(event.getValue().getContext().getKind()).isEqualTo("Jenkins");
+    assertThat(event.getValue().getId()).isEqualTo(store.getAll().iterator().next().getId());
   }
 
   @Test
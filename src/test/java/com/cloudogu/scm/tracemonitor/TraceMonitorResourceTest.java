@@ -20,6 +20,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Provider;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.subject.Subject;
 import org.apache.shiro.util.ThreadContext;
 import org.jboss.resteasy.mock.MockHttpRequest;
 import org.jboss.resteasy.mock.MockHttpResponse;
@@ -34,16 +39,30 @@ import sonia.scm.api.v2.resources.ScmPathInfoStore;
 import sonia.scm.trace.SpanContext;
 import sonia.scm.web.RestDispatcher;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -59,7 +78,13 @@ class TraceMonitorResourceTest {
   private TraceStore store;
 
   @Mock
-  private SpanContextMapper mapper;
+  private TraceMonitorStatistics statistics;
+
+  @Mock
+  private LiveTail liveTail;
+
+  @Mock
+  private Subject subject;
 
   @InjectMocks
   private TraceMonitorResource resource;
@@ -81,7 +106,7 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldGetAllSpans() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.empty());
+    mockSpans();
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH);
     MockHttpResponse response = new MockHttpResponse();
@@ -95,7 +120,7 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldOnlyGetFailedSpans() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.empty());
+    mockSpans();
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?onlyFailed=true");
     MockHttpResponse response = new MockHttpResponse();
@@ -109,7 +134,7 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldOnlyGetFilteredSpans() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.empty());
+    mockSpans();
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?labelFilter=redmi");
     MockHttpResponse response = new MockHttpResponse();
@@ -123,7 +148,7 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldOnlyGetSpansForKind() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.of("Redmine"));
+    mockSpans();
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?kind=Redmine");
     MockHttpResponse response = new MockHttpResponse();
@@ -137,7 +162,7 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldGetEmptyCollection() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.of("Redmine"));
+    mockSpans();
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?kind=Redmine&onlyFailed=true");
     MockHttpResponse response = new MockHttpResponse();
@@ -154,25 +179,28 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldGetAvailableKinds() throws UnsupportedEncodingException, URISyntaxException {
-    mockSpans(Optional.empty());
+    mockSpans();
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "available-kinds");
     MockHttpResponse response = new MockHttpResponse();
 
     dispatcher.invoke(request, response);
 
     assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
-    assertThat(response.getContentAsString()).contains("{\"kinds\":[\"Jenkins\",\"Redmine\"],\"_links\":{\"self\":{\"href\":\"hitchhiker.org/scm/v2/trace-monitor/available-kinds\"}}}");
+    assertThat(response.getContentAsString())
+      .contains("\"kinds\":[\"Jenkins\",\"Redmine\"]")
+      .contains("{\"kind\":\"Jenkins\",\"count\":1")
+      .contains("{\"kind\":\"Redmine\",\"count\":1")
+      .contains("\"_links\":{\"self\":{\"href\":\"hitchhiker.org/scm/v2/trace-monitor/available-kinds\"}}");
   }
 
   @Test
   void shouldGetSortedAndLimitedSpans() throws URISyntaxException, UnsupportedEncodingException {
-    List<SpanContext> contexts = new ArrayList<>();
+    List<StoredSpan> contexts = new ArrayList<>();
     for (int i = 0; i < 100; i++) {
-      SpanContext span = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), true);
+      StoredSpan span = storedSpan(String.valueOf(i), new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), true));
       contexts.add(span);
-      lenient().when(mapper.map(span)).thenReturn(new SpanContextDto("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), i, true));
     }
-    when(store.getAll()).thenReturn(contexts);
+    mockStore(contexts);
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?limit=10");
     MockHttpResponse response = new MockHttpResponse();
@@ -188,13 +216,12 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldGetSortedFailedLimitedSpans() throws URISyntaxException, UnsupportedEncodingException {
-    List<SpanContext> contexts = new ArrayList<>();
+    List<StoredSpan> contexts = new ArrayList<>();
     for (int i = 0; i < 100; i++) {
-      SpanContext span = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), i > 50);
+      StoredSpan span = storedSpan(String.valueOf(i), new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), i > 50));
       contexts.add(span);
-      lenient().when(mapper.map(span)).thenReturn(new SpanContextDto("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), i, i > 50));
     }
-    when(store.getAll()).thenReturn(contexts);
+    mockStore(contexts);
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?limit=10&onlyFailed=true");
     MockHttpResponse response = new MockHttpResponse();
@@ -212,13 +239,12 @@ class TraceMonitorResourceTest {
 
   @Test
   void shouldGetSpansOnSpecificPage() throws UnsupportedEncodingException, URISyntaxException {
-    List<SpanContext> contexts = new ArrayList<>();
+    List<StoredSpan> contexts = new ArrayList<>();
     for (int i = 0; i < 100; i++) {
-      SpanContext span = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), true);
+      StoredSpan span = storedSpan(String.valueOf(i), new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), true));
       contexts.add(span);
-      lenient().when(mapper.map(span)).thenReturn(new SpanContextDto("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), i, true));
     }
-    when(store.getAll()).thenReturn(contexts);
+    mockStore(contexts);
 
     MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?limit=10&page=3");
     MockHttpResponse response = new MockHttpResponse();
@@ -233,14 +259,407 @@ class TraceMonitorResourceTest {
     assertThat(response.getContentAsString()).doesNotContain("\"durationInMillis\":69");
   }
 
+  @Test
+  void shouldGetFirstPageWithCursorLink() throws UnsupportedEncodingException, URISyntaxException {
+    List<StoredSpan> contexts = mockSortedSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?limit=10&onlyFailed=true&cursor=");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"durationInMillis\":99")
+      .contains("\"durationInMillis\":90")
+      .doesNotContain("\"durationInMillis\":89")
+      .contains("?onlyFailed=true&cursor=" + SpanCursor.of(contexts.get(90)).encode() + "&limit=10\"")
+      .doesNotContain("\"pageTotal\"");
+  }
+
+  @Test
+  void shouldGetPageAfterCursor() throws UnsupportedEncodingException, URISyntaxException {
+    List<StoredSpan> contexts = mockSortedSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?limit=10&cursor=" + SpanCursor.of(contexts.get(5)).encode());
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"durationInMillis\":4")
+      .contains("\"durationInMillis\":0")
+      .doesNotContain("\"durationInMillis\":5")
+      .doesNotContain("\"next\"");
+  }
+
+  @Test
+  void shouldRejectInvalidCursor() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?cursor=not-a-cursor");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldGetSpansWithinTimeRange() throws UnsupportedEncodingException, URISyntaxException {
+    mockSortedSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?from=1970-01-01T00:00:00.100Z&to=1970-01-01T00:00:00.110Z");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"durationInMillis\":54")
+      .contains("\"durationInMillis\":50")
+      .doesNotContain("\"durationInMillis\":55")
+      .doesNotContain("\"durationInMillis\":49")
+      .contains("\"pageTotal\":1");
+  }
+
+  @Test
+  void shouldRejectInvalidTimeRange() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?from=yesterday");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldGetSlowestSpans() throws UnsupportedEncodingException, URISyntaxException {
+    mockSortedSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?sort=duration&minDuration=10&maxDuration=20&limit=5");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"durationInMillis\":20")
+      .contains("\"durationInMillis\":16")
+      .doesNotContain("\"durationInMillis\":21")
+      .doesNotContain("\"durationInMillis\":15")
+      .contains("\"pageTotal\":3");
+  }
+
+  @Test
+  void shouldRejectUnknownSortOrder() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?sort=size");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldRejectCursorForSlowestSpans() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?sort=duration&cursor=");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldGetStatistics() throws URISyntaxException, UnsupportedEncodingException {
+    ThreadContext.bind(subject);
+    TraceMonitorStatistics.KindStatistics jenkinsStatistics = new TraceMonitorStatistics.KindStatistics();
+    jenkinsStatistics.recordWriteLockWait(TimeUnit.MILLISECONDS.toNanos(42));
+    when(statistics.getKinds()).thenReturn(Map.of("Jenkins", jenkinsStatistics));
+    when(statistics.getLabelInternBytesSaved()).thenReturn(1024L);
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "statistics");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"Jenkins\":{")
+      .contains("\"writeLockWaits\":1")
+      .contains("\"writeLockWaitMillis\":42")
+      .contains("\"labelInternBytesSaved\":1024");
+  }
+
+  @Test
+  void shouldAnswerNotModifiedIfSpansDidNotChange() throws URISyntaxException, UnsupportedEncodingException {
+    mockSpans();
+
+    MockHttpResponse response = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?kind=Jenkins"), response);
+    String entityTag = response.getOutputHeaders().getFirst(HttpHeaders.ETAG).toString();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?kind=Jenkins")
+      .header(HttpHeaders.IF_NONE_MATCH, entityTag);
+    MockHttpResponse notModified = new MockHttpResponse();
+    dispatcher.invoke(request, notModified);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(notModified.getStatus()).isEqualTo(HttpServletResponse.SC_NOT_MODIFIED);
+    assertThat(notModified.getContentAsString()).isEmpty();
+    verify(store).count(any());
+    verify(store).find(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  void shouldAnswerWithSpansIfEntityTagIsOutdated() throws URISyntaxException, UnsupportedEncodingException {
+    mockSpans();
+
+    MockHttpResponse response = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH), response);
+    String entityTag = response.getOutputHeaders().getFirst(HttpHeaders.ETAG).toString();
+
+    when(store.getVersion(any())).thenReturn("2");
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH)
+      .header(HttpHeaders.IF_NONE_MATCH, entityTag);
+    MockHttpResponse modified = new MockHttpResponse();
+    dispatcher.invoke(request, modified);
+
+    assertThat(modified.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(modified.getContentAsString()).contains("\"kind\":\"Jenkins\"");
+    assertThat(modified.getOutputHeaders().getFirst(HttpHeaders.ETAG).toString()).isNotEqualTo(entityTag);
+  }
+
+  @Test
+  void shouldUseDifferentEntityTagsForDifferentQueries() throws URISyntaxException {
+    mockSpans();
+
+    MockHttpResponse all = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH), all);
+    MockHttpResponse secondPage = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?page=2&limit=1"), secondPage);
+
+    assertThat(all.getOutputHeaders().getFirst(HttpHeaders.ETAG))
+      .isNotNull()
+      .isNotEqualTo(secondPage.getOutputHeaders().getFirst(HttpHeaders.ETAG));
+  }
+
+  @Test
+  void shouldAnswerNotModifiedIfKindsDidNotChange() throws URISyntaxException {
+    mockSpans();
+
+    MockHttpResponse response = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "available-kinds"), response);
+    String entityTag = response.getOutputHeaders().getFirst(HttpHeaders.ETAG).toString();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "available-kinds")
+      .header(HttpHeaders.IF_NONE_MATCH, entityTag);
+    MockHttpResponse notModified = new MockHttpResponse();
+    dispatcher.invoke(request, notModified);
+
+    assertThat(notModified.getStatus()).isEqualTo(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(store).getKindSummaries();
+  }
+
+  @Test
+  void shouldReturnSelectedFieldsOnly() throws URISyntaxException, UnsupportedEncodingException {
+    mockSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?kind=Jenkins&fields=id,kind,labels.url");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"spans\":[{\"id\":\"span1\",\"kind\":\"Jenkins\",\"labels\":{\"url\":\"hitchhiker.org/jenkins\"}}]")
+      .doesNotContain("durationInMillis");
+  }
+
+  @Test
+  void shouldRejectUnknownFields() throws URISyntaxException {
+    mockSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "?fields=kind,password");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldGetSpanById() throws URISyntaxException, UnsupportedEncodingException {
+    StoredSpan span = storedSpan("42", new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(200), true));
+    when(store.get("Jenkins", "42")).thenReturn(Optional.of(span));
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "spans/Jenkins/42");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"id\":\"42\"")
+      .contains("\"labels\":{\"url\":\"hitchhiker.org/jenkins\"}")
+      .contains("\"durationInMillis\":200");
+  }
+
+  @Test
+  void shouldReturnNotFoundForUnknownSpan() throws URISyntaxException {
+    when(store.get("Jenkins", "42")).thenReturn(Optional.empty());
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "spans/Jenkins/42");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_NOT_FOUND);
+  }
+
+  @Test
+  void shouldCountSpans() throws URISyntaxException, UnsupportedEncodingException {
+    mockSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "count?onlyFailed=true");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getContentAsString())
+      .contains("\"count\":1")
+      .contains("\"self\":{\"href\":\"hitchhiker.org/scm/v2/trace-monitor/count\"}");
+    verify(store, never()).find(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  void shouldExportSpansAsNdjson() throws URISyntaxException, UnsupportedEncodingException {
+    mockSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "export?onlyFailed=true");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getOutputHeaders().getFirst(HttpHeaders.CONTENT_TYPE)).hasToString("application/x-ndjson;charset=UTF-8");
+    assertThat(response.getContentAsString().split("\n"))
+      .singleElement()
+      .asString()
+      .startsWith("{\"id\":\"span1\",\"kind\":\"Jenkins\",\"labels\":{\"url\":\"hitchhiker.org/jenkins\"}");
+  }
+
+  @Test
+  void shouldExportSpansAsCompressedCsv() throws URISyntaxException, IOException {
+    mockSpans();
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "export?format=csv&gzip=true&kind=Redmine");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    assertThat(response.getOutputHeaders().getFirst("Content-Disposition")).hasToString("attachment; filename=\"trace-monitor.csv.gz\"");
+    try (GZIPInputStream csv = new GZIPInputStream(new ByteArrayInputStream(response.getOutput()))) {
+      assertThat(new String(csv.readAllBytes(), StandardCharsets.UTF_8).split("\r\n"))
+        .hasSize(2)
+        .satisfies(lines -> assertThat(lines[0]).startsWith("id,kind,labels,opened,closed,durationInMillis,failed"))
+        .satisfies(lines -> assertThat(lines[1]).startsWith("span2,Redmine,\"{\"\"url\"\":\"\"hitchhiker.org/redmine\"\"}\","));
+    }
+  }
+
+  @Test
+  void shouldNotExportUnknownFormat() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "export?format=xml");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  void shouldSubscribeToLiveTail() {
+    ThreadContext.bind(subject);
+    SseEventSink sink = mock(SseEventSink.class);
+    Sse sse = mock(Sse.class);
+
+    resource.live(sink, sse, "Jenkins", true, "");
+
+    verify(liveTail).subscribe(SpanQuery.all().withKind("Jenkins").withOnlyFailed(true), sink, sse);
+  }
+
+  @Test
+  void shouldNotSubscribeToLiveTailIfNotPermitted() {
+    ThreadContext.bind(subject);
+    doThrow(AuthorizationException.class).when(subject).checkPermission("traceMonitor:read");
+    SseEventSink sink = mock(SseEventSink.class);
+    Sse sse = mock(Sse.class);
+
+    assertThrows(AuthorizationException.class, () -> resource.live(sink, sse, "", false, ""));
+
+    verify(liveTail, never()).subscribe(any(), any(), any());
+  }
+
+  @Test
+  void shouldNotGetStatisticsIfNotPermitted() throws URISyntaxException {
+    ThreadContext.bind(subject);
+    doThrow(AuthorizationException.class).when(subject).checkPermission("traceMonitor:read");
+
+    MockHttpRequest request = MockHttpRequest.get("/" + TraceMonitorResource.TRACE_MONITOR_PATH + "statistics");
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+  }
+
+  private void mockSpans() {
+    StoredSpan span1 = storedSpan("span1", new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.now(), Instant.now().plusMillis(200L), true));
+    StoredSpan span2 = storedSpan("span2", new SpanContext("Redmine", ImmutableMap.of("url", "hitchhiker.org/redmine"), Instant.now(), Instant.now().plusMillis(400L), false));
+    mockStore(ImmutableList.of(span1, span2));
+    lenient().when(store.getKindSummaries()).thenReturn(List.of(
+      new KindRegistry.KindSummary("Jenkins", 1, 1, null),
+      new KindRegistry.KindSummary("Redmine", 1, 0, null)
+    ));
+  }
+
+  private List<StoredSpan> mockSortedSpans() {
+    List<StoredSpan> contexts = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      StoredSpan span = storedSpan(String.valueOf(i), new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.ofEpochMilli(i), Instant.ofEpochMilli(i).plusMillis(i), true));
+      contexts.add(span);
+    }
+    mockStore(contexts);
+    return contexts;
+  }
+
+  private void mockStore(List<StoredSpan> spans) {
+    lenient().when(store.getVersion(any())).thenReturn("1");
+    lenient().when(store.getKindsVersion()).thenReturn("1");
+    lenient().when(store.find(any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+      int offset = invocation.getArgument(1);
+      int limit = invocation.getArgument(2);
+      return find(spans, invocation.getArgument(0)).skip(offset).limit(limit).toList();
+    });
+    lenient().when(store.findAfter(any(), any(), anyInt())).thenAnswer(invocation -> {
+      SpanCursor cursor = invocation.getArgument(1);
+      int limit = invocation.getArgument(2);
+      return find(spans, invocation.getArgument(0)).filter(span -> cursor == null || cursor.isBefore(span)).limit(limit).toList();
+    });
+    lenient().when(store.export(any())).thenAnswer(invocation -> find(spans, invocation.getArgument(0)));
+    lenient().when(store.count(any())).thenAnswer(invocation -> find(spans, invocation.getArgument(0)).count());
+  }
+
+  private Stream<StoredSpan> find(List<StoredSpan> spans, SpanQuery query) {
+    return spans.stream()
+      .filter(span -> !query.hasKind() || span.getKind().equals(query.getKind()))
+      .filter(query::matches)
+      .sorted(query.getOrder().comparator());
+  }
 
-  private void mockSpans(Optional<String> kind) {
-    SpanContext span1 = new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.now(), Instant.now().plusMillis(200L), true);
-    SpanContext span2 = new SpanContext("Redmine", ImmutableMap.of("url", "hitchhiker.org/redmine"), Instant.now(), Instant.now().plusMillis(400L), false);
-    lenient().when(store.getAll()).thenReturn(ImmutableList.of(span1, span2));
-    lenient().when(store.getKinds()).thenReturn(List.of("Jenkins", "Redmine"));
-    lenient().when(mapper.map(span1)).thenReturn(new SpanContextDto("Jenkins", ImmutableMap.of("url", "hitchhiker.org/jenkins"), Instant.now(), Instant.now().plusMillis(200L), 200, true));
-    lenient().when(mapper.map(span2)).thenReturn(new SpanContextDto("Redmine", ImmutableMap.of("url", "hitchhiker.org/redmine"), Instant.now(), Instant.now().plusMillis(400L), 400, false));
-    kind.ifPresent(value -> lenient().when(store.get(value)).thenReturn(List.of(span1, span2).stream().filter(s -> s.getKind().equalsIgnoreCase(value)).toList()));
+  private StoredSpan storedSpan(String id, SpanContext spanContext) {
+    return new StoredSpan(id, spanContext.getKind(), new SpanContextStoreWrapper(spanContext));
   }
 }
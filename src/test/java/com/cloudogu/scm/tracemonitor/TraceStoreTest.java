@@ -18,26 +18,36 @@ package com.cloudogu.scm.tracemonitor;
 
 import com.cloudogu.scm.tracemonitor.config.GlobalConfig;
 import com.cloudogu.scm.tracemonitor.config.GlobalConfigStore;
+import com.cloudogu.scm.tracemonitor.config.StorageEngine;
 import com.google.common.collect.ImmutableMap;
 import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.util.ThreadContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.store.QueryableMutableStore;
 import sonia.scm.store.QueryableStoreExtension;
 import sonia.scm.trace.SpanContext;
 
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({MockitoExtension.class, QueryableStoreExtension.class})
@@ -49,12 +59,20 @@ class TraceStoreTest {
   @Mock
   private GlobalConfigStore globalConfigStore;
 
+  private final TraceMonitorStatistics statistics = new TraceMonitorStatistics();
+
   private TraceStore store;
 
   @BeforeEach
-  void initStore(SpanContextStoreWrapperStoreFactory queryableStoreFactory) {
+  void initStore(SpanContextStoreWrapperStoreFactory queryableStoreFactory, @TempDir Path segmentDirectory) {
     ThreadContext.bind(subject);
-    store = new TraceStore(queryableStoreFactory, globalConfigStore);
+    lenient().when(globalConfigStore.get()).thenReturn(new GlobalConfig(100, null));
+    store = new TraceStore(
+      new QueryableSpanStorage(queryableStoreFactory),
+      new SegmentLogSpanStorage(segmentDirectory, SegmentLogSpanStorage.SEGMENT_SIZE),
+      globalConfigStore,
+      statistics
+    );
   }
 
   @AfterEach
@@ -80,7 +98,7 @@ class TraceStoreTest {
 
     SpanContext spanContext = addSpanContextToStore("Jenkins", false);
 
-    SpanContext storedSpan = store.get("Jenkins").iterator().next();
+    SpanContext storedSpan = store.get("Jenkins").iterator().next().getSpanContext();
     assertThat(storedSpan).isEqualTo(spanContext);
   }
 
@@ -88,7 +106,7 @@ class TraceStoreTest {
   void shouldGetEmptyList() {
     when(globalConfigStore.get()).thenReturn(new GlobalConfig(100, null));
 
-    Collection<SpanContext> spanContexts = store.getAll();
+    Collection<StoredSpan> spanContexts = store.getAll();
 
     assertThat(spanContexts).isEmpty();
   }
@@ -100,7 +118,7 @@ class TraceStoreTest {
     addSpanContextToStore("Jenkins", false);
     addSpanContextToStore("Redmine", true);
 
-    Collection<SpanContext> storedSpans = store.getAll();
+    Collection<StoredSpan> storedSpans = store.getAll();
     assertThat(storedSpans).hasSize(2);
     assertThat(storedSpans)
       .extracting("kind")
@@ -118,6 +136,80 @@ class TraceStoreTest {
       .containsExactlyInAnyOrder("Jenkins", "Redmine");
   }
 
+  @Test
+  void shouldTrackCountAndLastSeenOfKinds(SpanContextStoreWrapperStoreFactory storeFactory) {
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+
+    assertThat(store.getKindSummaries())
+      .containsExactly(new KindRegistry.KindSummary("Jenkins", 1, 0, Instant.ofEpochMilli(200)));
+
+    store.add(createSpan("Jenkins", "hitchhiker.org/jenkins", 0, 300, false));
+    store.add(createSpan("Redmine", "hitchhiker.org/redmine", 0, 100, true));
+
+    assertThat(store.getKindSummaries())
+      .containsExactly(
+        new KindRegistry.KindSummary("Jenkins", 2, 0, Instant.ofEpochMilli(300)),
+        new KindRegistry.KindSummary("Redmine", 1, 1, Instant.ofEpochMilli(100))
+      );
+  }
+
+  @Test
+  void shouldRecountKindsOnCleanUp() {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(2, null));
+    for (int i = 0; i < 5; i++) {
+      addSpanContextToStore("Jenkins", i, i % 2 == 0);
+    }
+    assertThat(store.getKindSummaries())
+      .extracting(KindRegistry.KindSummary::getCount, KindRegistry.KindSummary::getFailedCount)
+      .containsExactly(tuple(5L, 3L));
+
+    store.cleanUp();
+
+    assertThat(store.getKindSummaries())
+      .extracting(KindRegistry.KindSummary::getCount, KindRegistry.KindSummary::getFailedCount)
+      .containsExactly(tuple(2L, 1L));
+  }
+
+  @Test
+  void shouldCountWithoutReadingSpans(SpanContextStoreWrapperStoreFactory storeFactory) {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+    addSpanContextToStore("Jenkins", 1, false);
+    addSpanContextToStore("Jenkins", 2, true);
+    addSpanContextToStore("Redmine", 3, true);
+
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+
+    assertThat(store.count(SpanQuery.all())).isEqualTo(3);
+    assertThat(store.count(SpanQuery.all().withOnlyFailed(true))).isEqualTo(2);
+    assertThat(store.count(SpanQuery.all().withKind("Jenkins"))).isEqualTo(2);
+    assertThat(store.count(SpanQuery.all().withKind("Jenkins").withLabelFilter("scm"))).isEqualTo(3);
+  }
+
+  @Test
+  void shouldCountRecentSpansUpToStoreSize() {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(3, null));
+    for (int i = 0; i < 5; i++) {
+      store.add(createSpan("Jenkins", "hitchhiker.org/jenkins", 0, 100 + i, i < 4));
+    }
+
+    assertThat(store.count(SpanQuery.all())).isEqualTo(3);
+    assertThat(store.count(SpanQuery.all().withOnlyFailed(true))).isEqualTo(2);
+    assertThat(store.count(SpanQuery.all().withKind("Redmine"))).isZero();
+  }
+
+  @Test
+  void shouldStoreSpansWithNullLabelValues() {
+    Map<String, String> labels = new HashMap<>();
+    labels.put("url", "hitchhiker.org/scm");
+    labels.put("status", null);
+    store.add(new SpanContext("Jenkins", labels, Instant.ofEpochMilli(0), Instant.ofEpochMilli(42), false));
+
+    assertThat(store.find(SpanQuery.all().withLabelFilter("scm"), 0, 10))
+      .singleElement()
+      .satisfies(span -> assertThat(span.getLabels()).containsEntry("status", null));
+    assertThat(store.count(SpanQuery.all().withLabelFilter("null"))).isZero();
+  }
+
   @Test
   void shouldGetSpansForKindOnly() {
     when(globalConfigStore.get()).thenReturn(new GlobalConfig(100, null));
@@ -127,7 +219,7 @@ class TraceStoreTest {
     addSpanContextToStore("Redmine", false);
     addSpanContextToStore("Redmine", true);
 
-    Collection<SpanContext> spans = store.get("Jenkins");
+    Collection<StoredSpan> spans = store.get("Jenkins");
     assertThat(spans).hasSize(2);
     assertThat(spans.stream().allMatch(s -> s.getKind().equalsIgnoreCase("Jenkins"))).isTrue();
   }
@@ -140,11 +232,11 @@ class TraceStoreTest {
       addSpanContextToStore("Jenkins", i, false);
     }
 
-    Collection<SpanContext> spans = store.get("Jenkins");
+    Collection<StoredSpan> spans = store.get("Jenkins");
 
     assertThat(spans).hasSize(100);
     // Should store the latest 100 entries
-    assertThat(spans.stream().allMatch(s -> s.getOpened().isAfter(Instant.ofEpochMilli(899)))).isTrue();
+    assertThat(spans.stream().allMatch(s -> s.getSpanContext().getOpened().isAfter(Instant.ofEpochMilli(899)))).isTrue();
   }
 
   @Test
@@ -159,8 +251,25 @@ class TraceStoreTest {
       addSpanContextToStore("Redmine", i, false);
     }
 
-    Collection<SpanContext> spans = store.getAll();
-    assertThat(spans).hasSize(100);
+    Collection<StoredSpan> spans = store.getAll();
+    assertThat(spans).hasSize(200);
+  }
+
+  @Test
+  void shouldNotCrowdOutQuietKinds() {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(3, null));
+    for (int i = 0; i < 5; i++) {
+      store.add(createSpan("Jenkins", "hitchhiker.org/jenkins/job/" + i, 0, 100 + 2 * i, false));
+    }
+    store.add(createSpan("Redmine", "hitchhiker.org/redmine", 0, 101, false));
+
+    assertThat(store.getAll())
+      .extracting(StoredSpan::getClosed)
+      .containsExactly(Instant.ofEpochMilli(108), Instant.ofEpochMilli(106), Instant.ofEpochMilli(104), Instant.ofEpochMilli(101));
+    assertThat(store.find(SpanQuery.all(), 1, 3))
+      .extracting(StoredSpan::getKind)
+      .containsExactly("Jenkins", "Jenkins", "Redmine");
+    assertThat(store.count(SpanQuery.all())).isEqualTo(4);
   }
 
   @Test
@@ -179,13 +288,13 @@ class TraceStoreTest {
 
     addSpanContextToStore("Jenkins", 300, false);
 
-    Collection<SpanContext> jenkinsSpans = store.get("Jenkins");
-    Collection<SpanContext> redmineSpans = store.get("Redmine");
+    Collection<StoredSpan> jenkinsSpans = store.get("Jenkins");
+    Collection<StoredSpan> redmineSpans = store.get("Redmine");
 
     assertThat(jenkinsSpans).hasSize(20);
     assertThat(redmineSpans).hasSize(20);
 
-    assertThat(jenkinsSpans.stream().allMatch(s -> s.getOpened().isAfter(Instant.ofEpochMilli(80)))).isTrue();
+    assertThat(jenkinsSpans.stream().allMatch(s -> s.getSpanContext().getOpened().isAfter(Instant.ofEpochMilli(80)))).isTrue();
   }
 
   @Test
@@ -203,6 +312,561 @@ class TraceStoreTest {
     }
   }
 
+  @Test
+  void shouldServeRecentSpansFromMemory(SpanContextStoreWrapperStoreFactory storeFactory) {
+    addSpanContextToStore("Jenkins", 1, false);
+    assertThat(store.get("Jenkins")).hasSize(1);
+
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+
+    assertThat(store.get("Jenkins")).hasSize(1);
+    assertThat(store.getAll()).hasSize(1);
+  }
+
+  @Test
+  void shouldCacheQueryResultsUntilSpansOfKindAreAdded() {
+    addSpanContextToStore("Jenkins", 1, false);
+    SpanQuery jenkins = SpanQuery.all().withKind("Jenkins");
+
+    assertThat(store.find(jenkins, 0, 10)).hasSize(1);
+    assertThat(store.find(jenkins, 0, 10)).hasSize(1);
+    assertThat(store.count(SpanQuery.all())).isEqualTo(1);
+    assertThat(statistics.getResultCacheHits()).isEqualTo(1);
+    assertThat(statistics.getResultCacheMisses()).isEqualTo(2);
+
+    addSpanContextToStore("Redmine", 1, false);
+
+    assertThat(store.find(jenkins, 0, 10)).hasSize(1);
+    assertThat(store.count(SpanQuery.all())).isEqualTo(2);
+    assertThat(statistics.getResultCacheHits()).isEqualTo(2);
+    assertThat(statistics.getResultCacheMisses()).isEqualTo(3);
+
+    addSpanContextToStore("Jenkins", 2, false);
+
+    assertThat(store.find(jenkins, 0, 10)).hasSize(2);
+    assertThat(statistics.getResultCacheMisses()).isEqualTo(4);
+  }
+
+  @Test
+  void shouldChangeVersionOnlyIfSpansOfKindAreAdded() {
+    addSpanContextToStore("Jenkins", 1, false);
+    SpanQuery jenkins = SpanQuery.all().withKind("Jenkins");
+    String jenkinsVersion = store.getVersion(jenkins);
+    String allVersion = store.getVersion(SpanQuery.all());
+    String kindsVersion = store.getKindsVersion();
+
+    assertThat(store.getVersion(jenkins)).isEqualTo(jenkinsVersion);
+
+    addSpanContextToStore("Redmine", 1, false);
+
+    assertThat(store.getVersion(jenkins)).isEqualTo(jenkinsVersion);
+    assertThat(store.getVersion(SpanQuery.all())).isNotEqualTo(allVersion);
+    assertThat(store.getKindsVersion()).isNotEqualTo(kindsVersion);
+
+    addSpanContextToStore("Jenkins", 2, false);
+
+    assertThat(store.getVersion(jenkins)).isNotEqualTo(jenkinsVersion);
+  }
+
+  @Test
+  void shouldAddWrittenSpansToRecentSpans() {
+    addSpanContextToStore("Jenkins", 1, false);
+    assertThat(store.get("Jenkins")).hasSize(1);
+
+    addSpanContextToStore("Jenkins", 2, true);
+
+    assertThat(store.get("Jenkins"))
+      .extracting(StoredSpan::isFailed)
+      .containsExactly(true, false);
+  }
+
+  @Test
+  void shouldReadFromStoreIfStoreSizeExceedsRecentSpans(SpanContextStoreWrapperStoreFactory storeFactory) {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+    addSpanContextToStore("Jenkins", 1, false);
+    assertThat(store.get("Jenkins")).hasSize(1);
+
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+
+    assertThat(store.get("Jenkins")).hasSize(2);
+  }
+
+  @Test
+  void shouldGetSpanById() {
+    addSpanContextToStore("Jenkins", 1, true);
+    StoredSpan stored = store.get("Jenkins").iterator().next();
+
+    assertThat(store.get("Jenkins", stored.getId()))
+      .hasValueSatisfying(span -> assertThat(span.getSpanContext().getOpened()).isEqualTo(Instant.ofEpochMilli(1)));
+    assertThat(store.get("Jenkins", "unknown")).isEmpty();
+    assertThat(store.get("Redmine", stored.getId())).isEmpty();
+  }
+
+  @Test
+  void shouldReturnWrittenSpansWithIds() {
+    SpanContext first = createSpan("Jenkins", "hitchhiker.org/jenkins/1", 0, 100, false);
+    SpanContext second = createSpan("Jenkins", "hitchhiker.org/jenkins/2", 0, 200, true);
+
+    List<StoredSpan> written = store.addAll("Jenkins", List.of(first, second));
+
+    assertThat(written)
+      .extracting(span -> span.getLabels().get("url"))
+      .containsExactly("hitchhiker.org/jenkins/1", "hitchhiker.org/jenkins/2");
+    assertThat(store.get("Jenkins", written.get(1).getId()))
+      .hasValueSatisfying(span -> assertThat(span.isFailed()).isTrue());
+  }
+
+  @Test
+  void shouldGetSpanByIdFromStoreIfStoreSizeExceedsRecentSpans(SpanContextStoreWrapperStoreFactory storeFactory) {
+    when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+    addSpanContextToStore("Jenkins", 1, false);
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+    StoredSpan direct = store.get("Jenkins").iterator().next();
+
+    assertThat(store.get("Jenkins", direct.getId()))
+      .hasValueSatisfying(span -> assertThat(span.getLabels()).containsEntry("url", "hitchhiker.org/scm"));
+  }
+
+  @Test
+  void shouldReloadRecentSpansAfterCleanUp(SpanContextStoreWrapperStoreFactory storeFactory) {
+    addSpanContextToStore("Jenkins", 1, false);
+    assertThat(store.get("Jenkins")).hasSize(1);
+    putDirectlyIntoStore(storeFactory, "Jenkins");
+
+    store.cleanUp();
+
+    assertThat(store.get("Jenkins")).hasSize(2);
+  }
+
+  @Test
+  void shouldReadEntriesWrittenBeforeEncoding(SpanContextStoreWrapperStoreFactory storeFactory) {
+    SpanContext spanContext = createSpan("Jenkins", "hitchhiker.org/scm", 0, 200, true);
+    SpanContextStoreWrapper legacyWrapper = new SpanContextStoreWrapper();
+    legacyWrapper.setSpanContext(spanContext);
+    try (QueryableMutableStore<SpanContextStoreWrapper> mutableStore = storeFactory.getMutable("Jenkins")) {
+      mutableStore.put(legacyWrapper);
+    }
+
+    StoredSpan storedSpan = store.get("Jenkins").iterator().next();
+
+    assertThat(storedSpan.getKind()).isEqualTo("Jenkins");
+    assertThat(storedSpan.getClosed()).isEqualTo(spanContext.getClosed());
+    assertThat(storedSpan.isFailed()).isTrue();
+    assertThat(storedSpan.getCount()).isEqualTo(1);
+    assertThat(storedSpan.getAverageDurationMillis()).isEqualTo(200);
+  }
+
+  @Test
+  void shouldNotReturnSpansForUnknownKind() {
+    assertThat(store.get("Unknown")).isEmpty();
+  }
+
+  private void putDirectlyIntoStore(SpanContextStoreWrapperStoreFactory storeFactory, String kind) {
+    try (QueryableMutableStore<SpanContextStoreWrapper> mutableStore = storeFactory.getMutable(kind)) {
+      mutableStore.put(new SpanContextStoreWrapper(createSpan(kind, "hitchhiker.org/scm", 0, 200, false)));
+    }
+  }
+
+  @Nested
+  class Find {
+
+    @BeforeEach
+    void addSpans() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/jenkins/job/1", 0, 100, false),
+        createSpan("Jenkins", "hitchhiker.org/jenkins/job/2", 0, 300, true),
+        createSpan("Jenkins", "hitchhiker.org/jenkins/job/3", 0, 200, true)
+      ));
+      store.add(createSpan("Redmine", "hitchhiker.org/redmine", 0, 400, true));
+    }
+
+    @Test
+    void shouldFindRecentSpans() {
+      assertFind();
+    }
+
+    @Test
+    void shouldFindSpansInStore() {
+      when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+
+      assertFind();
+    }
+
+    private void assertFind() {
+      assertThat(store.find(SpanQuery.all(), 0, 10))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(400), Instant.ofEpochMilli(300), Instant.ofEpochMilli(200), Instant.ofEpochMilli(100));
+      assertThat(store.find(SpanQuery.all(), 1, 2))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(300), Instant.ofEpochMilli(200));
+
+      SpanQuery failedJenkinsJobs = SpanQuery.all().withKind("Jenkins").withOnlyFailed(true).withLabelFilter("job");
+      assertThat(store.find(failedJenkinsJobs, 0, 10))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(300), Instant.ofEpochMilli(200));
+      assertThat(store.count(failedJenkinsJobs)).isEqualTo(2);
+
+      assertThat(store.count(SpanQuery.all().withLabelFilter("redmine"))).isEqualTo(1);
+      assertThat(store.count(SpanQuery.all().withKind("Unknown"))).isZero();
+
+      SpanQuery timeRange = SpanQuery.all().withFrom(Instant.ofEpochMilli(200)).withTo(Instant.ofEpochMilli(400));
+      assertThat(store.find(timeRange, 0, 10))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(300), Instant.ofEpochMilli(200));
+      assertThat(store.count(timeRange)).isEqualTo(2);
+      assertThat(store.count(SpanQuery.all().withFrom(Instant.ofEpochMilli(301)))).isEqualTo(1);
+      SpanQuery before250 = SpanQuery.all().withTo(Instant.ofEpochMilli(250));
+      assertThat(store.find(before250, 0, 10))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(200), Instant.ofEpochMilli(100));
+      assertThat(store.count(before250)).isEqualTo(2);
+      SpanQuery between150And350 = SpanQuery.all().withFrom(Instant.ofEpochMilli(150)).withTo(Instant.ofEpochMilli(350));
+      assertThat(store.find(between150And350, 0, 10))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(300), Instant.ofEpochMilli(200));
+      assertThat(store.count(between150And350.withKind("Jenkins"))).isEqualTo(2);
+      assertThat(store.count(SpanQuery.all().withTo(Instant.ofEpochMilli(100)))).isZero();
+
+      SpanQuery slowest = SpanQuery.all().withOrder(SpanQuery.Order.SLOWEST_FIRST);
+      assertThat(store.find(slowest, 1, 2))
+        .extracting(StoredSpan::getDurationMillis)
+        .containsExactly(300L, 200L);
+      SpanQuery durationRange = slowest.withMinDurationMillis(150L).withMaxDurationMillis(300L);
+      assertThat(store.find(durationRange, 0, 10))
+        .extracting(StoredSpan::getDurationMillis)
+        .containsExactly(300L, 200L);
+      assertThat(store.count(durationRange)).isEqualTo(2);
+    }
+
+    @Test
+    void shouldLimitSpansInStoreToStoreSizePerKind() {
+      when(globalConfigStore.get()).thenReturn(new GlobalConfig(1_500, null));
+      List<SpanContext> spans = new ArrayList<>();
+      for (int i = 0; i < 1_600; i++) {
+        spans.add(createSpan("Jenkins", "hitchhiker.org/jenkins/limit/" + i, 0, 1_000 + i, i % 2 == 0));
+      }
+      store.addAll("Jenkins", spans);
+
+      assertThat(store.count(SpanQuery.all())).isEqualTo(1_501);
+      assertThat(store.count(SpanQuery.all().withKind("Jenkins").withOnlyFailed(true))).isEqualTo(750);
+      assertThat(store.count(SpanQuery.all().withLabelFilter("hitchhiker"))).isEqualTo(1_501);
+      assertThat(store.find(SpanQuery.all(), 0, 2_000)).hasSize(1_501);
+      assertThat(store.find(SpanQuery.all().withKind("Jenkins").withLabelFilter("jenkins/"), 1_490, 20))
+        .hasSize(10)
+        .extracting(StoredSpan::getClosed)
+        .last()
+        .isEqualTo(Instant.ofEpochMilli(1_100));
+    }
+
+    @Test
+    void shouldMatchLabelFilterLiterallyInRecentSpans() {
+      assertLabelFilterMatchesLiterally();
+    }
+
+    @Test
+    void shouldMatchLabelFilterLiterallyInStore() {
+      when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+
+      assertLabelFilterMatchesLiterally();
+    }
+
+    private void assertLabelFilterMatchesLiterally() {
+      store.add(createSpan("Jenkins", "hitchhiker.org/jenkins/job/%41", 0, 500, false));
+      store.add(new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/scm", "method", "GET"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(600), false));
+
+      SpanQuery wildcard = SpanQuery.all().withKind("Jenkins").withLabelFilter("b/%");
+      assertThat(store.find(wildcard, 0, 10))
+        .extracting(span -> span.getLabels().get("url"))
+        .containsExactly("hitchhiker.org/jenkins/job/%41");
+      assertThat(store.count(wildcard)).isEqualTo(1);
+
+      SpanQuery upperCase = SpanQuery.all().withLabelFilter("JENKINS");
+      assertThat(store.find(upperCase, 0, 10)).isEmpty();
+      assertThat(store.count(upperCase)).isZero();
+
+      SpanQuery acrossValues = SpanQuery.all().withKind("Jenkins").withLabelFilter("scm\nGET");
+      assertThat(store.find(acrossValues, 0, 10)).isEmpty();
+      assertThat(store.count(acrossValues)).isZero();
+    }
+
+    @Test
+    void shouldFindRecentSpansAfterCursor() {
+      assertFindAfter();
+    }
+
+    @Test
+    void shouldFindSpansInStoreAfterCursor() {
+      when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+
+      assertFindAfter();
+    }
+
+    @Test
+    void shouldExportRecentSpans() {
+      assertThat(store.export(SpanQuery.all().withFrom(Instant.ofEpochMilli(200))))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(400), Instant.ofEpochMilli(300), Instant.ofEpochMilli(200));
+    }
+
+    @Test
+    void shouldExportSpansInStoreInChunks() {
+      when(globalConfigStore.get()).thenReturn(new GlobalConfig(5_000, null));
+      List<SpanContext> spans = new ArrayList<>();
+      for (int i = 0; i < 1_500; i++) {
+        spans.add(createSpan("Jenkins", "hitchhiker.org/jenkins/export/" + i, 0, 1_000 + i, i % 2 == 0));
+      }
+      store.addAll("Jenkins", spans);
+
+      assertThat(store.export(SpanQuery.all()))
+        .hasSize(1_504)
+        .isSortedAccordingTo(StoredSpan.NEWEST_FIRST)
+        .doesNotHaveDuplicates();
+      assertThat(store.export(SpanQuery.all().withKind("Jenkins").withOnlyFailed(true).withLabelFilter("export")))
+        .hasSize(750);
+    }
+
+    private void assertFindAfter() {
+      store.add(createSpan("Jenkins", "hitchhiker.org/jenkins/job/4", 0, 200, false));
+
+      List<StoredSpan> spans = new ArrayList<>();
+      SpanCursor cursor = null;
+      List<StoredSpan> page;
+      do {
+        page = store.findAfter(SpanQuery.all(), cursor, 2);
+        spans.addAll(page);
+        if (!page.isEmpty()) {
+          cursor = SpanCursor.decode(SpanCursor.of(page.get(page.size() - 1)).encode());
+        }
+      } while (page.size() == 2);
+
+      assertThat(spans)
+        .extracting(span -> span.getLabels().get("url"))
+        .containsExactly(
+          "hitchhiker.org/redmine",
+          "hitchhiker.org/jenkins/job/2",
+          "hitchhiker.org/jenkins/job/4",
+          "hitchhiker.org/jenkins/job/3",
+          "hitchhiker.org/jenkins/job/1"
+        );
+
+      SpanQuery failedSince200 = SpanQuery.all().withOnlyFailed(true).withFrom(Instant.ofEpochMilli(200));
+      List<StoredSpan> firstPage = store.findAfter(failedSince200, null, 2);
+      assertThat(firstPage)
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(400), Instant.ofEpochMilli(300));
+      assertThat(store.findAfter(failedSince200, SpanCursor.of(firstPage.get(1)), 2))
+        .extracting(StoredSpan::getClosed)
+        .containsExactly(Instant.ofEpochMilli(200));
+    }
+  }
+
+  @Nested
+  class WithCoalescing {
+
+    private GlobalConfig config;
+
+    @BeforeEach
+    void enableCoalescing() {
+      config = new GlobalConfig(100, null);
+      config.setCoalescingWindowSeconds(60);
+      lenient().when(globalConfigStore.get()).thenReturn(config);
+    }
+
+    @Test
+    void shouldCountCoalescedSpansAsSingleEntry() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 1000, 1300, true)
+      ));
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 2000, 2200, true));
+
+      assertThat(store.getKindSummaries())
+        .containsExactly(new KindRegistry.KindSummary("Jenkins", 1, 1, Instant.ofEpochMilli(2200)));
+    }
+
+    @Test
+    void shouldCoalesceRepeatedSpans() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 1000, 1300, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 2000, 2200, true)
+      ));
+
+      Collection<StoredSpan> spans = store.get("Jenkins");
+
+      assertThat(spans).hasSize(1);
+      StoredSpan span = spans.iterator().next();
+      assertThat(span.getCount()).isEqualTo(3);
+      assertThat(span.getFirstClosed()).isEqualTo(Instant.ofEpochMilli(100));
+      assertThat(span.getClosed()).isEqualTo(Instant.ofEpochMilli(2200));
+      assertThat(span.getMinDurationMillis()).isEqualTo(100);
+      assertThat(span.getMaxDurationMillis()).isEqualTo(300);
+      assertThat(span.getAverageDurationMillis()).isEqualTo(200);
+    }
+
+    @Test
+    void shouldCoalesceAcrossBatches() {
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true));
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 1000, 1100, true));
+
+      assertThat(store.get("Jenkins"))
+        .singleElement()
+        .extracting(StoredSpan::getCount)
+        .isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepLastOccurrenceIfOlderSpanIsCoalesced() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/scm", 1000, 1300, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true)
+      ));
+
+      assertThat(store.get("Jenkins"))
+        .singleElement()
+        .satisfies(span -> {
+          assertThat(span.getCount()).isEqualTo(2);
+          assertThat(span.getFirstClosed()).isEqualTo(Instant.ofEpochMilli(100));
+          assertThat(span.getClosed()).isEqualTo(Instant.ofEpochMilli(1300));
+          assertThat(span.getDurationMillis()).isEqualTo(300);
+        });
+    }
+
+    @Test
+    void shouldRetainUpdatedEntries() {
+      String formerId = store.addAll("Jenkins", List.of(createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true))).get(0).getId();
+      store.add(createSpan("Jenkins", "hitchhiker.org/jenkins", 0, 200, true));
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 0, 300, true));
+      config.setStoreSize(1);
+
+      store.cleanUp();
+
+      assertThat(store.get("Jenkins"))
+        .singleElement()
+        .satisfies(span -> {
+          assertThat(span.getLabels()).containsEntry("url", "hitchhiker.org/scm");
+          assertThat(span.getCount()).isEqualTo(2);
+        });
+      assertThat(store.get("Jenkins", formerId))
+        .hasValueSatisfying(span -> assertThat(span.getCount()).isEqualTo(2));
+    }
+
+    @Test
+    void shouldNotCoalesceDifferentSpans() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, false),
+        createSpan("Jenkins", "hitchhiker.org/jenkins", 0, 100, true)
+      ));
+
+      assertThat(store.get("Jenkins")).hasSize(3);
+    }
+
+    @Test
+    void shouldNotCoalesceSpansOutsideOfWindow() {
+      store.addAll("Jenkins", List.of(
+        createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true),
+        createSpan("Jenkins", "hitchhiker.org/scm", 60_000, 60_200, true)
+      ));
+
+      assertThat(store.get("Jenkins")).hasSize(2);
+    }
+  }
+
+  @Nested
+  class WithSegmentLog {
+
+    private GlobalConfig config;
+
+    @BeforeEach
+    void useSegmentLog() {
+      config = new GlobalConfig(100, null);
+      config.setStorageEngine(StorageEngine.SEGMENT_LOG);
+      lenient().when(globalConfigStore.get()).thenReturn(config);
+    }
+
+    @Test
+    void shouldStoreSpans() {
+      addSpanContextToStore("Jenkins", 1, false);
+      addSpanContextToStore("Redmine", 2, true);
+
+      assertThat(store.getKinds()).containsExactly("Jenkins", "Redmine");
+      assertThat(store.get("Jenkins")).hasSize(1);
+      assertThat(store.getAll()).hasSize(2);
+    }
+
+    @Test
+    void shouldReadSpansFromSegmentsForLargeStoreSize() {
+      config.setStoreSize(5_000);
+      for (int i = 0; i < 10; i++) {
+        addSpanContextToStore("Jenkins", i, false);
+      }
+
+      assertThat(store.get("Jenkins"))
+        .hasSize(10)
+        .first()
+        .extracting(span -> span.getSpanContext().getOpened())
+        .isEqualTo(Instant.ofEpochMilli(9));
+    }
+
+    @Test
+    void shouldCoalesceSpans() {
+      config.setCoalescingWindowSeconds(60);
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 0, 100, true));
+      store.add(createSpan("Jenkins", "hitchhiker.org/scm", 1000, 1300, true));
+      config.setStoreSize(5_000);
+
+      assertThat(store.get("Jenkins"))
+        .singleElement()
+        .extracting(StoredSpan::getCount)
+        .isEqualTo(2);
+    }
+
+    @Test
+    void shouldPageThroughKindsWithEqualIdsClosedAtSameInstant() {
+      for (String kind : List.of("Jenkins", "Redmine", "Hudson")) {
+        for (int i = 0; i < 3; i++) {
+          store.add(createSpan(kind, "hitchhiker.org/" + kind + "/" + i, 0, 200, false));
+        }
+      }
+
+      for (int storeSize : List.of(100, 5_000)) {
+        config.setStoreSize(storeSize);
+        List<StoredSpan> spans = new ArrayList<>();
+        SpanCursor cursor = null;
+        List<StoredSpan> page;
+        do {
+          page = store.findAfter(SpanQuery.all(), cursor, 2);
+          spans.addAll(page);
+          if (!page.isEmpty()) {
+            cursor = SpanCursor.decode(SpanCursor.of(page.get(page.size() - 1)).encode());
+          }
+        } while (page.size() == 2);
+
+        assertThat(spans)
+          .hasSize(9)
+          .isSortedAccordingTo(StoredSpan.NEWEST_FIRST)
+          .extracting(span -> span.getLabels().get("url"))
+          .doesNotHaveDuplicates();
+      }
+    }
+
+    @Test
+    void shouldNotShowSpansOfFormerEngine() {
+      config.setStorageEngine(StorageEngine.QUERYABLE_STORE);
+      addSpanContextToStore("Jenkins", 1, false);
+      assertThat(store.get("Jenkins")).hasSize(1);
+
+      config.setStorageEngine(StorageEngine.SEGMENT_LOG);
+
+      assertThat(store.get("Jenkins")).isEmpty();
+    }
+  }
+
+  private SpanContext createSpan(String kind, String url, long opened, long closed, boolean failed) {
+    return new SpanContext(kind, ImmutableMap.of("url", url), Instant.ofEpochMilli(opened), Instant.ofEpochMilli(closed), failed);
+  }
+
   private SpanContext addSpanContextToStore(String kind, long opened, boolean failed) {
     SpanContext spanContext = new SpanContext(kind, ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(opened), Instant.ofEpochMilli(200L), failed);
     store.add(spanContext);
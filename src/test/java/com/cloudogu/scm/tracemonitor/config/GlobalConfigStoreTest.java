@@ -64,6 +64,15 @@ class GlobalConfigStoreTest {
     assertThat(globalConfig.getStoreSize()).isEqualTo(1337);
   }
 
+  @Test
+  void shouldReturnUpdatedConfigFromCache() {
+    store.get();
+    store.update(new GlobalConfig(42, null));
+
+    GlobalConfig globalConfig = store.get();
+    assertThat(globalConfig.getStoreSize()).isEqualTo(42);
+  }
+
   @Test
   void shouldNotUpdateConfigWithoutPermission() {
     doThrow(AuthorizationException.class).when(subject).checkPermission("configuration:write:traceMonitor");
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.tracemonitor.update;
+
+import com.cloudogu.scm.tracemonitor.SpanContextStoreWrapper;
+import com.cloudogu.scm.tracemonitor.SpanContextStoreWrapperStoreFactory;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import sonia.scm.store.QueryableStoreExtension;
+import sonia.scm.trace.SpanContext;
+import sonia.scm.version.Version;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(QueryableStoreExtension.class)
+@QueryableStoreExtension.QueryableTypes(SpanContextStoreWrapper.class)
+class TraceMonitorSpanQueryFieldsUpdateStepTest {
+
+  @Test
+  void shouldEncodeLegacySpans(SpanContextStoreWrapperStoreFactory queryableStoreFactory) {
+    SpanContextStoreWrapper legacyWrapper = new SpanContextStoreWrapper();
+    legacyWrapper.setSpanContext(new SpanContext("Jenkins", ImmutableMap.of("url", "hitchhiker.org/scm"), Instant.ofEpochMilli(0), Instant.ofEpochMilli(200), true));
+    String id;
+    try (var dataStore = queryableStoreFactory.getMutable("Jenkins")) {
+      id = dataStore.put(legacyWrapper);
+    }
+
+    new TraceMonitorSpanQueryFieldsUpdateStep(queryableStoreFactory).doUpdate();
+
+    try (var dataStore = queryableStoreFactory.getMutable("Jenkins")) {
+      SpanContextStoreWrapper wrapper = dataStore.get(id);
+      assertThat(wrapper.getSpanContext()).isNull();
+      assertThat(wrapper.getEncodedSpanContext()).isNotEmpty();
+      assertThat(wrapper.isFailed()).isTrue();
+      assertThat(wrapper.getClosed()).isEqualTo(Instant.ofEpochMilli(200));
+      assertThat(wrapper.getDurationMillis()).isEqualTo(200);
+      assertThat(wrapper.getLabelValues()).isEqualTo("hitchhiker.org/scm");
+      assertThat(wrapper.getCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void shouldRunForInstallationsOfReleasedVersions(SpanContextStoreWrapperStoreFactory queryableStoreFactory) {
+    Version targetVersion = new TraceMonitorSpanQueryFieldsUpdateStep(queryableStoreFactory).getTargetVersion();
+
+    assertThat(targetVersion.isNewer(Version.parse("3.2.0"))).isTrue();
+  }
+}